@@ -0,0 +1,27 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures parsing the content of a .p8 file.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class ApnsKeyBenchmark {
+
+  private String authKey;
+
+  @Setup
+  public void setUp() throws Exception {
+    authKey = BenchmarkKeys.generateAuthKey();
+  }
+
+  @Benchmark
+  public ApnsKey parse() {
+    return ApnsKey.of(authKey, "A1B2C3D4F5", "A1B2C3D4F5");
+  }
+}
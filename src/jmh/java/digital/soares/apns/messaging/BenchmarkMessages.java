@@ -0,0 +1,53 @@
+package digital.soares.apns.messaging;
+
+import java.util.UUID;
+
+/**
+ * Creates the messages used by the benchmarks.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+final class BenchmarkMessages {
+
+  private BenchmarkMessages() {
+  }
+
+  /**
+   * Creates a message shaped like a chat notification.
+   *
+   * @param token of the target device
+   * @return a new {@link ApnsMessage}
+   */
+  static ApnsMessage create(String token) {
+    return ApnsMessage.builder()
+      .setToken(token)
+      .setId(UUID.randomUUID())
+      .setTopic("es.usoar.app")
+      .setCollapseId("chat-42")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("New message")
+          .setBody("Hey, are we still on for lunch tomorrow? \u00e0 bient\u00f4t")
+          .setLocKey("CHAT_MESSAGE")
+          .addLocArg("Uanderson")
+          .build())
+        .setBadge(3)
+        .setSound("default")
+        .setThreadId("chat-42")
+        .build())
+      .putData("chatId", "42")
+      .putData("senderId", "1001")
+      .build();
+  }
+
+  /**
+   * Creates a random device token.
+   *
+   * @param seed to derive the token from
+   * @return 64 hexadecimal chars
+   */
+  static String token(long seed) {
+    var uuid = new UUID(seed, ~seed);
+    return (uuid.toString() + new UUID(~seed, seed)).replace("-", "");
+  }
+}
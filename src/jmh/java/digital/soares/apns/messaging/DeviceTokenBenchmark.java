@@ -0,0 +1,54 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+
+/**
+ * Measures parsing device tokens and building their request URI, by
+ * parsing the whole URL as before and through the environment fast path.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class DeviceTokenBenchmark {
+
+  private static final String URL = "https://api.push.apple.com/3/device/";
+
+  private String token;
+  private DeviceToken deviceToken;
+
+  @Setup
+  public void setUp() {
+    token = BenchmarkMessages.token(1);
+    deviceToken = DeviceToken.parse(token);
+  }
+
+  @Benchmark
+  public DeviceToken parse() {
+    return DeviceToken.parse(token);
+  }
+
+  @Benchmark
+  public String print() {
+    return deviceToken.toString();
+  }
+
+  @Benchmark
+  public URI createUriParsingUrl() {
+    return URI.create(URL + token);
+  }
+
+  @Benchmark
+  public URI createUriFromString() {
+    return ApnsMessaging.AppleEnvironment.PRODUCTION.createUri(token);
+  }
+
+  @Benchmark
+  public URI createUriFromDeviceToken() {
+    return ApnsMessaging.AppleEnvironment.PRODUCTION.createUri(deviceToken);
+  }
+}
@@ -0,0 +1,37 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Measures the serialization of a typical payload with each {@link PayloadEncoder}.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class PayloadEncoderBenchmark {
+
+  @Param({"jackson", "streaming"})
+  private String encoder;
+
+  private PayloadEncoder payloadEncoder;
+  private ApnsMessage message;
+
+  @Setup
+  public void setUp() {
+    payloadEncoder = "jackson".equals(encoder)
+      ? PayloadEncoder.jackson() : PayloadEncoder.streaming();
+
+    message = BenchmarkMessages.create("5b2a1c7f0e3d4a6b8c9d0e1f2a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d");
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return payloadEncoder.encode(message);
+  }
+}
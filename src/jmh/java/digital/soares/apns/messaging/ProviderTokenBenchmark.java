@@ -0,0 +1,48 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures generating and signing a provider token with each
+ * {@link TokenSigner}, and reading the cached one as the send path does.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class ProviderTokenBenchmark {
+
+  @Param({"jjwt", "builtIn"})
+  private String signer;
+
+  private ProviderToken providerToken;
+
+  @Setup
+  public void setUp() throws Exception {
+    var tokenSigner = "jjwt".equals(signer)
+      ? TokenSigner.jjwt() : TokenSigner.builtIn();
+
+    providerToken = new ProviderToken(ApnsKey.of(BenchmarkKeys.generateAuthKey(), "A1B2C3D4F5", "A1B2C3D4F5"),
+      tokenSigner, null);
+  }
+
+  @TearDown
+  public void tearDown() {
+    providerToken.close();
+  }
+
+  @Benchmark
+  public String generate() {
+    providerToken.refresh();
+    return providerToken.get();
+  }
+
+  @Benchmark
+  public String read() {
+    return providerToken.get();
+  }
+}
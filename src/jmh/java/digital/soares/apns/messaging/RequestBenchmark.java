@@ -0,0 +1,50 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Measures building the request of a message: the URI and the headers.
+ * No connection is ever opened.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+
+  private ApnsMessaging apnsMessaging;
+  private ApnsMessage message;
+  private byte[] body;
+
+  @Setup
+  public void setUp() throws Exception {
+    apnsMessaging = ApnsMessaging.builder()
+      .setApnsKey(ApnsKey.of(BenchmarkKeys.generateAuthKey(), "A1B2C3D4F5", "A1B2C3D4F5"))
+      .setEnvironment(token -> URI.create("https://localhost:1/3/device/" + token))
+      .build();
+
+    message = BenchmarkMessages.create(BenchmarkMessages.token(1));
+    body = PayloadEncoder.streaming().encode(message);
+  }
+
+  @TearDown
+  public void tearDown() {
+    apnsMessaging.close();
+  }
+
+  @Benchmark
+  public ApnsRequest createRequest() {
+    return apnsMessaging.createRequest(message, body);
+  }
+
+  @Benchmark
+  public ApnsRequest encodeAndCreateRequest() throws IOException {
+    return apnsMessaging.createRequest(message, PayloadEncoder.streaming().encode(message));
+  }
+}
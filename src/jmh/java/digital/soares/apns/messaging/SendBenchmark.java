@@ -0,0 +1,76 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the end-to-end throughput of sending notifications over
+ * HTTP/2 to an {@link ApnsSimulator}, including TLS, framing and
+ * response parsing. {@code sendAsync} sends one notification at a time, measuring the round
+ * trip, while {@code sendAll} sends a batch with many streams in flight,
+ * measuring throughput; its score is per notification.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class SendBenchmark {
+
+  private static final int BATCH_SIZE = 10_000;
+
+  @Param({"1", "4"})
+  private int connections;
+
+  private ApnsSimulator simulator;
+  private ApnsMessaging apnsMessaging;
+  private List<ApnsMessage> messages;
+  private ApnsMessage message;
+
+  @Setup
+  public void setUp() throws Exception {
+    var keyPair = ApnsKeyPair.generate("A1B2C3D4F5", "A1B2C3D4F5");
+
+    simulator = ApnsSimulator.builder()
+      .addProviderKey(keyPair)
+      .build();
+    apnsMessaging = ApnsMessaging.builder()
+      .setApnsKey(keyPair.getApnsKey())
+      .setEnvironment(simulator.environment())
+      .setSslContext(ApnsSimulator.clientSslContext())
+      .setConnectionPoolSize(connections)
+      .setMaxInFlight(connections * 1000)
+      .build();
+
+    messages = new ArrayList<>(BATCH_SIZE);
+    for (var i = 0; i < BATCH_SIZE; i++) {
+      messages.add(BenchmarkMessages.create(BenchmarkMessages.token(i)));
+    }
+
+    message = messages.get(0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    apnsMessaging.close();
+    simulator.close();
+  }
+
+  @Benchmark
+  public ApnsResponse sendAsync() throws IOException {
+    return apnsMessaging.sendAsync(message).join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public BulkResult sendAll() {
+    return apnsMessaging.sendAll(messages).join();
+  }
+}
@@ -0,0 +1,50 @@
+package digital.soares.apns.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the first token signed by a fresh JVM with each {@link TokenSigner},
+ * class loading and initialization included, as a short-lived sender sees it.
+ * The key is parsed beforehand, so only the signing path is measured.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class TokenSignerColdStartBenchmark {
+
+  @Param({"jjwt", "builtIn"})
+  private String signer;
+
+  private ApnsKey apnsKey;
+
+  @Setup
+  public void setUp() throws Exception {
+    apnsKey = ApnsKey.of(BenchmarkKeys.generateAuthKey(), "A1B2C3D4F5", "A1B2C3D4F5");
+  }
+
+  @Benchmark
+  public String firstToken() throws GeneralSecurityException {
+    var tokenSigner = "jjwt".equals(signer)
+      ? TokenSigner.jjwt() : TokenSigner.builtIn();
+
+    return tokenSigner.sign(apnsKey, 1588000000);
+  }
+}
@@ -0,0 +1,127 @@
+package digital.soares.apns.messaging;
+
+/**
+ * Adapts the number of notifications in flight to the latency of Apple's
+ * APNS service, with a gradient algorithm in the spirit of TCP Vegas.
+ *
+ * <p>Requests are sampled over windows of about one round trip, so each
+ * update sees the effect of the previous one. At the end of a window its
+ * average latency is compared to the long-term one. While they are close,
+ * the limit grows by about its square root, and it shrinks in proportion
+ * as the latency rises, meaning requests start queueing somewhere. A
+ * window where more than a twentieth of the requests failed or timed out
+ * cuts the limit by a tenth instead; a lower error rate is background
+ * noise rather than congestion. The limit only grows when the traffic
+ * actually uses it.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class AdaptiveLimiter {
+
+  /**
+   * The latency of a window rising up to this ratio of the long-term one
+   * is taken as jitter rather than queueing.
+   */
+  private static final double TOLERANCE = 1.5;
+  private static final double MAX_DROP_RATIO = 0.05;
+  private static final double BACKOFF_RATIO = 0.9;
+  private static final double SMOOTHING = 0.5;
+  private static final int LONG_WINDOWS = 100;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private double limit;
+  private double longRtt;
+  private long windowStart = System.nanoTime();
+  private long windowLength;
+  private long windowRtt;
+  private int windowSamples;
+  private int windowInFlight;
+  private int windowCompleted;
+  private int windowDropped;
+  private volatile int currentLimit;
+
+  AdaptiveLimiter(ConcurrencyLimit concurrencyLimit, int capacity) {
+    this.maxLimit = Math.max(1, Math.min(capacity, concurrencyLimit.getMaxLimit()));
+    this.minLimit = Math.min(concurrencyLimit.getMinLimit(), maxLimit);
+    this.limit = Math.min(concurrencyLimit.getInitialLimit(), maxLimit);
+    this.currentLimit = (int) limit;
+  }
+
+  /**
+   * Gets the current limit of notifications in flight.
+   *
+   * @return the current limit
+   */
+  int getLimit() {
+    return currentLimit;
+  }
+
+  /**
+   * Samples the outcome of a request, and updates the limit when it closes
+   * a window.
+   *
+   * @param startedAt   the {@link System#nanoTime()} the request started at
+   * @param completedAt the {@link System#nanoTime()} its outcome came at
+   * @param inFlight    the requests in flight when it started, itself included
+   * @param dropped     whether it failed or timed out
+   */
+  synchronized void onSample(long startedAt, long completedAt, int inFlight, boolean dropped) {
+    windowCompleted++;
+
+    if (dropped) {
+      windowDropped++;
+    } else if (startedAt - windowStart >= 0) {
+      // requests started in an earlier window ran under an earlier limit
+      windowRtt += completedAt - startedAt;
+      windowSamples++;
+      windowInFlight = Math.max(windowInFlight, inFlight);
+    }
+
+    if (completedAt - windowStart < windowLength) {
+      return;
+    }
+
+    if (windowDropped > windowCompleted * MAX_DROP_RATIO) {
+      update(limit * BACKOFF_RATIO);
+    } else if (windowSamples > 0) {
+      adapt((double) windowRtt / windowSamples);
+      windowLength = windowRtt / windowSamples;
+    }
+
+    windowStart = completedAt;
+    windowRtt = 0;
+    windowSamples = 0;
+    windowInFlight = 0;
+    windowCompleted = 0;
+    windowDropped = 0;
+  }
+
+  private void adapt(double rtt) {
+    if (longRtt == 0) {
+      longRtt = rtt;
+    } else {
+      longRtt += (rtt - longRtt) / LONG_WINDOWS;
+    }
+
+    // after a sustained slowdown, let the long-term average come back down quickly
+    if (longRtt > 2 * rtt) {
+      longRtt *= 0.95;
+    }
+
+    // the traffic doesn't use the limit, there is nothing to learn from it
+    if (windowInFlight * 2 < limit) {
+      return;
+    }
+
+    var gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+    var newLimit = limit * gradient + Math.sqrt(limit);
+
+    update(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+  }
+
+  private void update(double newLimit) {
+    limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    currentLimit = (int) limit;
+  }
+}
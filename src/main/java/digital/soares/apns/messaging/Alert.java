@@ -27,10 +27,12 @@ public class Alert {
     this.title = builder.title;
     this.body = builder.body;
     this.titleLocKey = builder.titleLocKey;
-    this.titleLocArgs = builder.titleLocArgs;
+    this.titleLocArgs = Objects.isNull(builder.titleLocArgs)
+      ? List.of() : List.copyOf(builder.titleLocArgs);
     this.actionLocKey = builder.actionLocKey;
     this.locKey = builder.locKey;
-    this.locArgs = builder.locArgs;
+    this.locArgs = Objects.isNull(builder.locArgs)
+      ? List.of() : List.copyOf(builder.locArgs);
     this.launchImage = builder.launchImage;
   }
 
@@ -50,11 +52,7 @@ public class Alert {
   }
 
   public List<String> getTitleLocArgs() {
-    if (Objects.isNull(titleLocArgs)) {
-      return List.of();
-    }
-
-    return List.copyOf(titleLocArgs);
+    return titleLocArgs;
   }
 
   @Nullable
@@ -68,11 +66,7 @@ public class Alert {
   }
 
   public List<String> getLocArgs() {
-    if (Objects.isNull(locArgs)) {
-      return List.of();
-    }
-
-    return List.copyOf(locArgs);
+    return locArgs;
   }
 
   @Nullable
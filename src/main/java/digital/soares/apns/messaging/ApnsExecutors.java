@@ -0,0 +1,68 @@
+package digital.soares.apns.messaging;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides executors to be given to {@link ApnsMessaging.Builder#setExecutor}.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public final class ApnsExecutors {
+
+  private ApnsExecutors() {
+  }
+
+  /**
+   * Gets an executor starting a new virtual thread for each task. Blocking
+   * in {@link ApnsMessaging#send} then costs no platform thread, so tens of
+   * thousands of sends may wait at once. Virtual threads need Java 21; on
+   * older versions the executor falls back to a cached pool of daemon
+   * platform threads. The executor is shared and never shut down.
+   *
+   * @return the shared virtual thread executor
+   */
+  public static Executor virtualThreads() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Tells whether {@link #virtualThreads()} runs its tasks on virtual
+   * threads, that is whether the running Java version supports them.
+   *
+   * @return {@code true} if virtual threads are supported
+   */
+  public static boolean isVirtualThreadsSupported() {
+    return Holder.VIRTUAL;
+  }
+
+  private static class Holder {
+
+    private static final ExecutorService VIRTUAL_EXECUTOR = createVirtual();
+    private static final boolean VIRTUAL = VIRTUAL_EXECUTOR != null;
+    private static final ExecutorService INSTANCE = VIRTUAL ? VIRTUAL_EXECUTOR : createCached();
+
+    /**
+     * Calls {@code Executors.newVirtualThreadPerTaskExecutor()} reflectively,
+     * so the library still runs on Java 11.
+     */
+    private static ExecutorService createVirtual() {
+      try {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return null;
+      }
+    }
+
+    private static ExecutorService createCached() {
+      var counter = new AtomicInteger();
+      return Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "apns-messaging-worker-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+}
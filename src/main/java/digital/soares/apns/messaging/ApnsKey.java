@@ -22,11 +22,13 @@ public class ApnsKey {
   private final Key key;
   private final String keyId;
   private final String teamId;
+  private final String id;
 
   private ApnsKey(Key key, String keyId, String teamId) {
     this.key = key;
     this.keyId = keyId;
     this.teamId = teamId;
+    this.id = id(teamId, keyId);
   }
 
   public static ApnsKey of(@NonNull String key, @NonNull String keyId, @NonNull String teamId) {
@@ -61,4 +63,18 @@ public class ApnsKey {
   public String getTeamId() {
     return teamId;
   }
+
+  /**
+   * Gets the identity of the key, made of the team id and the key id.
+   * Keys with the same identity share a provider token.
+   *
+   * @return the identity of the key
+   */
+  String getId() {
+    return id;
+  }
+
+  static String id(String teamId, String keyId) {
+    return teamId + '.' + keyId;
+  }
 }
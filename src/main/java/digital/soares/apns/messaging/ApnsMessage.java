@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -20,12 +21,15 @@ import java.util.UUID;
 public class ApnsMessage {
 
   private final String token;
+  private final DeviceToken deviceToken;
   private final UUID id;
   private final long expiration;
   private final Priority priority;
   private final String topic;
   private final String collapseId;
   private final Map<String, String> data;
+  private final ApnsKey apnsKey;
+  private final Duration timeout;
 
   @JsonView(ApnsView.class)
   private final Aps aps;
@@ -35,7 +39,12 @@ public class ApnsMessage {
       throw new IllegalArgumentException("Token must not be empty");
     }
 
+    if (builder.timeout != null && (builder.timeout.isNegative() || builder.timeout.isZero())) {
+      throw new IllegalArgumentException("Timeout must be positive");
+    }
+
     this.token = builder.token;
+    this.deviceToken = builder.deviceToken;
     this.id = builder.id;
     this.expiration = builder.expiration;
     this.priority = builder.priority == null
@@ -45,14 +54,41 @@ public class ApnsMessage {
       ? "" : builder.topic;
 
     this.collapseId = builder.collapseId;
-    this.data = builder.data;
+    this.data = Map.copyOf(builder.data);
+    this.apnsKey = builder.apnsKey;
+    this.timeout = builder.timeout;
     this.aps = builder.aps;
   }
 
+  private ApnsMessage(ApnsMessage message, String token, DeviceToken deviceToken, ApnsKey apnsKey) {
+    this.token = token;
+    this.deviceToken = deviceToken;
+    this.id = message.id;
+    this.expiration = message.expiration;
+    this.priority = message.priority;
+    this.topic = message.topic;
+    this.collapseId = message.collapseId;
+    this.data = message.data;
+    this.apnsKey = apnsKey;
+    this.timeout = message.timeout;
+    this.aps = message.aps;
+  }
+
   public String getToken() {
     return token;
   }
 
+  /**
+   * Gets the token of the target device when it was set from its raw
+   * form, so the request URI is built without checking it again.
+   *
+   * @return the {@link DeviceToken}, or null if set as a string
+   */
+  @Nullable
+  DeviceToken getDeviceToken() {
+    return deviceToken;
+  }
+
   @Nullable
   public UUID getId() {
     return id;
@@ -77,13 +113,38 @@ public class ApnsMessage {
 
   @JsonAnyGetter
   public Map<String, String> getData() {
-    return Map.copyOf(data);
+    return data;
   }
 
   public Aps getAps() {
     return aps;
   }
 
+  /**
+   * Gets the key of the tenant the message is sent on behalf of. The
+   * provider token is then chosen for that key instead of the default
+   * key of {@link ApnsMessaging}.
+   *
+   * @return the tenant key, or null to use the default key
+   */
+  @Nullable
+  @JsonIgnore
+  public ApnsKey getApnsKey() {
+    return apnsKey;
+  }
+
+  /**
+   * Gets how long each attempt to send the message may wait for Apple's
+   * APNS service to answer.
+   *
+   * @return the timeout, or null to use the one of {@link ApnsMessaging}
+   */
+  @Nullable
+  @JsonIgnore
+  public Duration getTimeout() {
+    return timeout;
+  }
+
   /**
    * Checks whether the message has an assigned id.
    *
@@ -113,6 +174,44 @@ public class ApnsMessage {
     return expiration > -1;
   }
 
+  /**
+   * Checks whether the message is no longer valid at the given time. A
+   * zero expiration asks Apple's APNS service to attempt delivery once,
+   * so it never expires locally.
+   *
+   * @param epochSecond the time, in seconds since the epoch
+   * @return true if the expiration passed, false otherwise
+   */
+  boolean isExpiredAt(long epochSecond) {
+    return expiration > 0 && expiration < epochSecond;
+  }
+
+  /**
+   * Creates a copy of this message addressed to another device. The
+   * payload is shared, not copied.
+   *
+   * @param token of the target device
+   * @return a new {@link ApnsMessage} for the given device
+   */
+  ApnsMessage withToken(String token) {
+    if (token == null || token.length() == 0) {
+      throw new IllegalArgumentException("Token must not be empty");
+    }
+
+    return new ApnsMessage(this, token, null, apnsKey);
+  }
+
+  /**
+   * Creates a copy of this message sent on behalf of another tenant.
+   * The payload is shared, not copied.
+   *
+   * @param apnsKey of the tenant
+   * @return a new {@link ApnsMessage} for the given tenant
+   */
+  ApnsMessage withApnsKey(ApnsKey apnsKey) {
+    return new ApnsMessage(this, token, deviceToken, apnsKey);
+  }
+
   /**
    * Creates a new {@link ApnsMessage.Builder}.
    *
@@ -125,16 +224,32 @@ public class ApnsMessage {
   public static class Builder {
 
     private String token;
+    private DeviceToken deviceToken;
     private UUID id;
     private int expiration = -1;
     private Priority priority = Priority.IMMEDIATE;
     private String topic;
     private String collapseId;
     private Aps aps;
+    private ApnsKey apnsKey;
+    private Duration timeout;
     private final Map<String, String> data = new HashMap<>();
 
     public Builder setToken(String token) {
       this.token = token;
+      this.deviceToken = null;
+      return this;
+    }
+
+    /**
+     * Sets the token of the target device from its raw form.
+     *
+     * @param token of the device
+     * @return this builder
+     */
+    public Builder setToken(DeviceToken token) {
+      this.token = token == null ? null : token.toString();
+      this.deviceToken = token;
       return this;
     }
 
@@ -168,6 +283,33 @@ public class ApnsMessage {
       return this;
     }
 
+    /**
+     * Sets the key of the tenant the message is sent on behalf of, so a
+     * single {@link ApnsMessaging} can serve many teams and keys over the
+     * same connections. Defaults to the key of the {@link ApnsMessaging}.
+     *
+     * @param apnsKey the tenant key
+     * @return this builder
+     */
+    public Builder setApnsKey(ApnsKey apnsKey) {
+      this.apnsKey = apnsKey;
+      return this;
+    }
+
+    /**
+     * Sets how long each attempt to send the message may wait for Apple's
+     * APNS service to answer, so time-critical notifications fail fast
+     * while bulk ones wait longer. Defaults to the request timeout of the
+     * {@link ApnsMessaging}.
+     *
+     * @param timeout of each attempt
+     * @return this builder
+     */
+    public Builder setTimeout(Duration timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+
     public Builder putData(String key, String value) {
       this.data.put(key, value);
       return this;
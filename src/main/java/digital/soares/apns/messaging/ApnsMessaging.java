@@ -1,53 +1,155 @@
 package digital.soares.apns.messaging;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+
+import javax.net.ssl.SSLContext;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * This class is the entry point for all server-side Apple APNS actions.
  *
+ * <p>A single instance can serve many tenants: messages carrying their own
+ * {@link ApnsMessage#getApnsKey() key} are authenticated with a provider
+ * token kept per team id and key id, while sharing the connections of the
+ * instance. One instance per {@link Environment} is then enough, however
+ * many apps and teams it sends for.
+ *
  * @author <a href="https://usoar.es">Uanderson Soares</a>
  */
-public class ApnsMessaging {
+public class ApnsMessaging implements AutoCloseable {
+
+  /**
+   * Any device path will do, APNS answers GET requests with
+   * {@code 405} without looking at the token nor the provider token.
+   */
+  private static final String WARM_UP_TOKEN = "0";
 
-  private static final int CONNECTION_TIMEOUT = 30;
-  private static final long CACHE_TTL = 55 * 60 * 1000;
+  /**
+   * Apple's APNS service currently allows 1000 concurrent
+   * streams per connection once the provider token is accepted.
+   */
+  private static final int MAX_CONCURRENT_STREAMS = 1000;
+
+  /**
+   * How many {@code IMMEDIATE} notifications start for each {@code THROTTLED}
+   * one when both wait for a stream.
+   */
+  private static final int IMMEDIATE_WEIGHT = 4;
+  private static final System.Logger LOGGER = System.getLogger(ApnsMessaging.class.getName());
 
-  private final ApnsKey apnsKey;
   private final Environment environment;
-  private final HttpClient httpClient;
-  private final ObjectWriter objectWriter;
-  private long tokenTimestamp;
-  private String cachedToken;
-
-  private ApnsMessaging(ApnsKey apnsKey, Environment environment) {
-    this.apnsKey = apnsKey;
-    this.environment = environment;
-    this.httpClient = HttpClient.newBuilder()
-      .version(HttpClient.Version.HTTP_2)
-      .build();
+  private final ApnsKey apnsKey;
+  private final ProviderTokens providerTokens;
+  private final ConnectionPool connectionPool;
+  private final PayloadEncoder payloadEncoder;
+  private final int maxConcurrentStreams;
+  private final int maxInFlight;
+  private final RetryPolicy retryPolicy;
+  private final UnregisteredTokens unregisteredTokens;
+  private final RateLimiter topicRateLimiter;
+  private final RateLimiter deviceRateLimiter;
+  private final long maxRateLimitDelay;
+  private final LongAdder rateLimitDelays = new LongAdder();
+  private final LongAdder rateLimitDelayNanos = new LongAdder();
+  private final LongAdder rateLimitRejections = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final Coalescer coalescer;
+  private final PriorityScheduler scheduler;
+  private final CircuitBreaker circuitBreaker;
+  private final Duration requestTimeout;
+  private final ScheduledFuture<?> keepAlive;
+  private final ApnsMetrics metrics;
+  private final Executor executor;
+  private final SendJournal journal;
+
+  private ApnsMessaging(Builder builder) {
+    var tokenRefreshListener = builder.tokenRefreshListener;
+
+    this.environment = builder.environment;
+    this.maxConcurrentStreams = builder.maxConcurrentStreams;
+    this.maxInFlight = builder.maxInFlight;
+    this.metrics = builder.metrics;
+    this.apnsKey = builder.apnsKey;
+    this.providerTokens = new ProviderTokens(builder.tokenSigner, (refreshCount, elapsed) -> {
+      metrics.onTokenRefresh(elapsed.toNanos());
 
-    this.objectWriter = new ObjectMapper()
-      .disable(MapperFeature.DEFAULT_VIEW_INCLUSION)
-      .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
-      .writerWithView(ApnsView.class);
+      if (tokenRefreshListener != null) {
+        tokenRefreshListener.onRefresh(refreshCount, elapsed);
+      }
+    });
+
+    if (apnsKey != null) {
+      providerTokens.get(apnsKey);
+    }
+
+    builder.tenantKeys.forEach(providerTokens::get);
+
+    var sslContext = builder.sslContext;
+    var executor = builder.executor;
+    this.executor = executor;
+    var transport = builder.transport;
+    this.connectionPool = new ConnectionPool(builder.connectionPoolSize, () -> transport.open(sslContext, executor));
+
+    this.payloadEncoder = builder.payloadEncoder;
+    this.retryPolicy = builder.retryPolicy;
+    this.unregisteredTokens = builder.unregisteredTokens;
+    this.topicRateLimiter = builder.topicRateLimit == null ? null : new RateLimiter(builder.topicRateLimit);
+    this.deviceRateLimiter = builder.deviceRateLimit == null ? null : new RateLimiter(builder.deviceRateLimit);
+    this.maxRateLimitDelay = builder.maxRateLimitDelay.toNanos();
+    this.journal = builder.journal;
+    this.circuitBreaker = builder.circuitBreakerPolicy == null ? null : new CircuitBreaker(builder.circuitBreakerPolicy);
+    this.requestTimeout = builder.requestTimeout;
+
+    var immediateReserve = builder.immediateReserve == null ? maxConcurrentStreams / 10 : builder.immediateReserve;
+    var capacity = (int) Math.min(Integer.MAX_VALUE, (long) maxConcurrentStreams * connectionPool.size());
+    this.scheduler = new PriorityScheduler(capacity,
+      (int) Math.min(Integer.MAX_VALUE, (long) immediateReserve * connectionPool.size()),
+      builder.immediateWeight,
+      builder.concurrencyLimit == null ? null : new AdaptiveLimiter(builder.concurrencyLimit, capacity),
+      metrics);
+
+    this.coalescer = builder.coalescingWindow == null ? null
+      : new Coalescer(builder.coalescingWindow.toNanos(), this::deliver, message -> {
+        coalesced.increment();
+        metrics.onRejected(message, MessageRejectedException.Reason.COALESCED);
+      });
+
+    if (builder.keepAliveInterval == null) {
+      this.keepAlive = null;
+    } else {
+      var interval = builder.keepAliveInterval.toNanos();
+      this.keepAlive = SharedScheduler.get()
+        .scheduleWithFixedDelay(() -> keepAlive(interval), interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    if (builder.eagerConnect) {
+      warmUp();
+    }
   }
 
   public static ApnsMessaging of(@NonNull ApnsKey apnsKey) {
@@ -58,21 +160,67 @@ public class ApnsMessaging {
   public static ApnsMessaging of(@NonNull ApnsKey apnsKey, @NonNull Environment environment) {
     Objects.requireNonNull(apnsKey, "Apns key must not be null");
     Objects.requireNonNull(environment, "Environment must not be null");
-    return new ApnsMessaging(apnsKey, environment);
+    return builder()
+      .setApnsKey(apnsKey)
+      .setEnvironment(environment)
+      .build();
+  }
+
+  /**
+   * Creates an instance without a default key, sending every message on
+   * behalf of the tenant key it carries.
+   *
+   * @param environment to send to
+   * @return a new {@link ApnsMessaging} instance
+   */
+  public static ApnsMessaging of(@NonNull Environment environment) {
+    Objects.requireNonNull(environment, "Environment must not be null");
+    return builder()
+      .setEnvironment(environment)
+      .build();
+  }
+
+  /**
+   * Creates a new {@link ApnsMessaging.Builder}.
+   *
+   * @return A {@link ApnsMessaging.Builder} instance.
+   */
+  public static Builder builder() {
+    return new Builder();
   }
 
   /**
    * Sends a notification to Apple's APNS.
    *
    * @param message to be sent
-   * @return a {@link HttpResponse} with the result
+   * @return a {@link ApnsResponse} with the result
    * @throws NullPointerException in case of {@code message} is null
    * @throws IOException          in case of something goes wrong
    * @throws InterruptedException in case of something goes wrong
    */
-  public HttpResponse<String> send(ApnsMessage message) throws IOException, InterruptedException {
+  public ApnsResponse send(ApnsMessage message) throws IOException, InterruptedException {
     Objects.requireNonNull(message, "Message must not be null");
-    return httpClient.send(createRequest(message), HttpResponse.BodyHandlers.ofString());
+
+    var future = sendAsync(message, encode(message));
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      var cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw new IOException(cause);
+    }
   }
 
   /**
@@ -83,71 +231,1238 @@ public class ApnsMessaging {
    * @throws NullPointerException in case of {@code message} is null
    * @throws IOException          in case of something goes wrong
    */
-  public CompletableFuture<HttpResponse<String>> sendAsync(ApnsMessage message) throws IOException {
+  public CompletableFuture<ApnsResponse> sendAsync(ApnsMessage message) throws IOException {
     Objects.requireNonNull(message, "Message must not be null");
-    return httpClient.sendAsync(createRequest(message), HttpResponse.BodyHandlers.ofString());
+    return sendAsync(message, encode(message));
   }
 
   /**
-   * Build a {@link HttpRequest}.
+   * Sends a notification, writing it to the journal first when there is
+   * one. The notification is acknowledged once its outcome is known.
    *
-   * @param message with the pertinent data
-   * @return a new {@link HttpRequest}
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the outcome of the last attempt
+   */
+  private CompletableFuture<ApnsResponse> sendAsync(ApnsMessage message, byte[] body) {
+    if (apnsKey == null && message.getApnsKey() == null) {
+      return CompletableFuture.failedFuture(
+        new IllegalArgumentException("Message has no apns key and there is no default key"));
+    }
+
+    if (journal == null) {
+      return coalesce(message, body);
+    }
+
+    // the journal completes a whole batch on its sync thread, send elsewhere
+    // so the next fsync doesn't wait for the batch to be dispatched
+    var appended = journal.append(message, body);
+    Function<Long, CompletableFuture<ApnsResponse>> send =
+      sequence -> acknowledge(sequence, coalesce(message, body));
+
+    return executor == null
+      ? appended.thenComposeAsync(send)
+      : appended.thenComposeAsync(send, executor);
+  }
+
+  /**
+   * Hands collapsable notifications to the {@link Coalescer}, when there
+   * is one, and delivers the others right away.
+   *
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the outcome of the last attempt
+   */
+  private CompletableFuture<ApnsResponse> coalesce(ApnsMessage message, byte[] body) {
+    if (coalescer == null || !message.isCollapsable()) {
+      return deliver(message, body);
+    }
+
+    return coalescer.submit(message, body);
+  }
+
+  /**
+   * Acknowledges a journaled notification once Apple's APNS service answers
+   * it, whatever the answer, or it is refused locally. Notifications that
+   * can't be built, like a malformed token, fail the same way on every
+   * replay, so they are acknowledged too. Notifications failed by I/O may
+   * or may not have been delivered, and the ones refused while shutting
+   * down were never sent, so they are left pending to be replayed.
+   *
+   * @param sequence of the notification in the journal
+   * @param future   completed with the outcome
+   * @return {@code future}
+   */
+  private CompletableFuture<ApnsResponse> acknowledge(long sequence, CompletableFuture<ApnsResponse> future) {
+    return future.whenComplete((response, failure) -> {
+      var cause = failure instanceof CompletionException && failure.getCause() != null
+        ? failure.getCause() : failure;
+
+      if (response != null || cause instanceof MessageRejectedException
+        || cause instanceof RuntimeException && !(cause instanceof RejectedExecutionException)) {
+        journal.acknowledge(sequence);
+      }
+    });
+  }
+
+  /**
+   * Sends a notification retrying it according to the {@link RetryPolicy}.
+   * Retries are scheduled on the shared timer, so no thread waits for them.
+   *
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the outcome of the last attempt
+   */
+  private CompletableFuture<ApnsResponse> deliver(ApnsMessage message, byte[] body) {
+    if (unregisteredTokens != null && unregisteredTokens.isUnregistered(message.getToken())) {
+      return reject(message, MessageRejectedException.Reason.UNREGISTERED, "Device token is unregistered");
+    }
+
+    if (retryPolicy.getMaxAttempts() == 1) {
+      return admit(message, body);
+    }
+
+    var result = new CompletableFuture<ApnsResponse>();
+    var deadline = System.nanoTime() + retryPolicy.getDeadline().toNanos();
+
+    attempt(message, body, 1, deadline, result);
+    return result;
+  }
+
+  private void attempt(ApnsMessage message, byte[] body, int attempt, long deadline,
+                       CompletableFuture<ApnsResponse> result) {
+    if (result.isDone()) {
+      return;
+    }
+
+    admit(message, body).whenComplete((response, failure) -> {
+      if (attempt < retryPolicy.getMaxAttempts() && RetryPolicy.isRetryable(response, failure)) {
+        // thrown here, nothing would ever complete the result
+        try {
+          var delay = retryPolicy.backoffNanos(attempt);
+
+          // a retry landing past the expiration would only be dropped
+          if (System.nanoTime() + delay < deadline && !isExpired(message, delay)) {
+            metrics.onRetry(message, attempt);
+            SharedScheduler.get().schedule(() ->
+              attempt(message, body, attempt + 1, deadline, result), delay, TimeUnit.NANOSECONDS);
+            return;
+          }
+        } catch (RuntimeException e) {
+          result.completeExceptionally(e);
+          return;
+        }
+      }
+
+      if (failure != null) {
+        result.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure);
+      } else {
+        result.complete(response);
+      }
+    });
+  }
+
+  /**
+   * Applies the rate limits to a single attempt, either dispatching it
+   * right away, delaying it on the shared timer or refusing it. Attempts
+   * are refused right away while the circuit is open or once the message
+   * expired.
+   *
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the response
+   */
+  private CompletableFuture<ApnsResponse> admit(ApnsMessage message, byte[] body) {
+    if (isExpired(message, 0)) {
+      return expire(message);
+    }
+
+    if (circuitBreaker != null && circuitBreaker.isOpen()) {
+      return reject(message, MessageRejectedException.Reason.CIRCUIT_OPEN, "Circuit breaker is open");
+    }
+
+    var delay = 0L;
+
+    if (topicRateLimiter != null) {
+      delay = topicRateLimiter.acquire(message.getTopic(), maxRateLimitDelay);
+    }
+
+    if (deviceRateLimiter != null && delay != RateLimiter.REJECTED) {
+      var deviceDelay = deviceRateLimiter.acquire(message.getToken(), maxRateLimitDelay);
+
+      // a refused notification must not use up the quota of its topic
+      if (deviceDelay == RateLimiter.REJECTED && topicRateLimiter != null) {
+        topicRateLimiter.release(message.getTopic());
+      }
+
+      delay = deviceDelay == RateLimiter.REJECTED ? deviceDelay : Math.max(delay, deviceDelay);
+    }
+
+    if (delay == 0) {
+      return schedule(message, body);
+    }
+
+    if (delay == RateLimiter.REJECTED) {
+      rateLimitRejections.increment();
+      return reject(message, MessageRejectedException.Reason.RATE_LIMITED, "Rate limit exceeded");
+    }
+
+    rateLimitDelays.increment();
+    rateLimitDelayNanos.add(delay);
+    metrics.onRateLimitDelay(message, delay);
+
+    var result = new CompletableFuture<ApnsResponse>();
+    SharedScheduler.get().schedule(() -> schedule(message, body).whenComplete((response, failure) -> {
+      if (failure != null) {
+        result.completeExceptionally(failure);
+      } else {
+        result.complete(response);
+      }
+    }), delay, TimeUnit.NANOSECONDS);
+
+    return result;
+  }
+
+  /**
+   * Makes a single attempt to send a notification once a stream is free
+   * for its priority, unless it expired or the circuit opened while it
+   * waited.
+   *
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the response
+   */
+  private CompletableFuture<ApnsResponse> schedule(ApnsMessage message, byte[] body) {
+    return scheduler.submit(message, () -> {
+      if (isExpired(message, 0)) {
+        return expire(message);
+      }
+
+      if (circuitBreaker == null) {
+        return dispatch(message, body);
+      }
+
+      var generation = circuitBreaker.tryAcquire();
+
+      if (generation < 0) {
+        return reject(message, MessageRejectedException.Reason.CIRCUIT_OPEN, "Circuit breaker is open");
+      }
+
+      return dispatch(message, body).whenComplete((response, failure) ->
+        circuitBreaker.onOutcome(generation, CircuitBreaker.isFailure(response, failure)));
+    });
+  }
+
+  /**
+   * Makes a single attempt to send a notification.
+   *
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the response
+   */
+  private CompletableFuture<ApnsResponse> dispatch(ApnsMessage message, byte[] body) {
+    var connection = connectionPool.acquire();
+    var start = System.nanoTime();
+    CompletableFuture<ApnsResponse> future;
+
+    metrics.onRequest(message, body.length);
+
+    if (!connection.isWarm()) {
+      metrics.onColdRequest(message);
+    }
+
+    try {
+      // a tenant key used for the first time is signed here
+      var request = createRequest(message, body);
+      future = connection.getChannel().send(request);
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    // transports complete their futures on their own threads, hop to ours
+    var responses = executor == null
+      ? future
+      : future.thenApplyAsync(Function.identity(), executor);
+
+    return responses
+      .whenComplete((response, failure) -> {
+        var latency = System.nanoTime() - start;
+        connectionPool.release(connection, failure);
+
+        // a failing callback must not turn the response into a failure
+        try {
+          if (response != null) {
+            metrics.onResponse(message, response, latency);
+            onResponse(message, response);
+          } else {
+            metrics.onFailure(message, failure, latency);
+          }
+        } catch (RuntimeException e) {
+          LOGGER.log(System.Logger.Level.WARNING, "Response callback failed", e);
+        }
+      });
+  }
+
+  /**
+   * Opens every pooled connection, or checks it is still open, by sending
+   * a request Apple's APNS service answers right away without delivering
+   * anything. Sends made afterwards don't pay for the connection and TLS
+   * handshakes.
+   *
+   * @return a {@link CompletableFuture} completed once every connection is
+   * answered, or failed with the failure of one of them
+   */
+  public CompletableFuture<Void> warmUp() {
+    var warmUps = new CompletableFuture<?>[connectionPool.size()];
+
+    for (var i = 0; i < warmUps.length; i++) {
+      warmUps[i] = warmUp(i);
+    }
+
+    return CompletableFuture.allOf(warmUps);
+  }
+
+  /**
+   * Sends the warm-up request on a single connection. Any answer means
+   * the connection is established; a failed connection is replaced.
+   *
+   * @param index of the connection
+   * @return a {@link CompletableFuture} completed once the connection is answered
+   */
+  private CompletableFuture<Void> warmUp(int index) {
+    var connection = connectionPool.acquire(index);
+    var start = System.nanoTime();
+    CompletableFuture<ApnsResponse> future;
+
+    try {
+      // built on each use, an environment may not be able to give its URI yet
+      var request = new ApnsRequest("GET", environment.createUri(WARM_UP_TOKEN), Map.of(), null,
+        requestTimeout);
+      future = connection.getChannel().send(request);
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    return future
+      .whenComplete((response, failure) -> {
+        connectionPool.release(connection, failure);
+
+        if (failure == null) {
+          metrics.onWarmUp(System.nanoTime() - start);
+        }
+      })
+      .thenApply(response -> null);
+  }
+
+  /**
+   * Warms up the connections idle for at least the keepalive interval, so
+   * they aren't dropped silently by the network in between.
+   *
+   * @param interval the keepalive interval, in nanos
+   */
+  private void keepAlive(long interval) {
+    var now = System.nanoTime();
+
+    for (var i = 0; i < connectionPool.size(); i++) {
+      var connection = connectionPool.get(i);
+
+      if (connection.getInFlight() == 0 && now - connection.getLastActivity() >= interval) {
+        warmUp(i);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a message will have expired after the given delay.
+   *
+   * @param message    to be sent
+   * @param delayNanos from now
+   * @return true if its expiration will have passed, false otherwise
+   */
+  private static boolean isExpired(ApnsMessage message, long delayNanos) {
+    return message.hasExpiration() && message.isExpiredAt(Instant.now().plusNanos(delayNanos).getEpochSecond());
+  }
+
+  private CompletableFuture<ApnsResponse> expire(ApnsMessage message) {
+    expired.increment();
+    return reject(message, MessageRejectedException.Reason.EXPIRED, "Notification expired before it was sent");
+  }
+
+  /**
+   * Refuses a notification locally.
+   *
+   * @param message that is refused
+   * @param reason  of the refusal
+   * @param text    describing the refusal
+   * @return a {@link CompletableFuture} failed with a {@link MessageRejectedException}
    */
-  private HttpRequest createRequest(ApnsMessage message) throws IOException {
-    if (Objects.isNull(cachedToken) || isTokenExpired()) {
-      cachedToken = generateToken();
+  private CompletableFuture<ApnsResponse> reject(ApnsMessage message, MessageRejectedException.Reason reason,
+                                                 String text) {
+    metrics.onRejected(message, reason);
+    return CompletableFuture.failedFuture(new MessageRejectedException(reason, text));
+  }
+
+  /**
+   * Keeps track of the device tokens reported as no longer valid.
+   *
+   * @param message  that was sent
+   * @param response sent back by Apple's APNS service
+   */
+  private void onResponse(ApnsMessage message, ApnsResponse response) {
+    if (unregisteredTokens != null && response.getStatusCode() == 410) {
+      var timestamp = response.getTimestamp() == null
+        ? Instant.now() : response.getTimestamp();
+
+      unregisteredTokens.unregister(message.getToken(), timestamp);
     }
+  }
+
+  /**
+   * Sends all the given notifications to Apple's APNS service keeping at
+   * most the configured number of them in flight. Messages are pulled from
+   * {@code messages} only as earlier ones complete.
+   *
+   * @param messages to be sent
+   * @return a {@link CompletableFuture} with the summary, completed when all messages are done
+   * @throws NullPointerException in case of {@code messages} is null
+   */
+  public CompletableFuture<BulkResult> sendAll(Iterable<ApnsMessage> messages) {
+    return sendAll(messages, null);
+  }
+
+  /**
+   * Sends all the given notifications to Apple's APNS service keeping at
+   * most the configured number of them in flight. Messages are pulled from
+   * {@code messages} only as earlier ones complete.
+   *
+   * @param messages to be sent
+   * @param listener to be called with the outcome of each message, may be null
+   * @return a {@link CompletableFuture} with the summary, completed when all messages are done
+   * @throws NullPointerException in case of {@code messages} is null
+   */
+  public CompletableFuture<BulkResult> sendAll(Iterable<ApnsMessage> messages, Consumer<SendResult> listener) {
+    Objects.requireNonNull(messages, "Messages must not be null");
+    return sendAll(messages.iterator(), listener);
+  }
+
+  /**
+   * Sends all the notifications of the given stream to Apple's APNS service
+   * keeping at most the configured number of them in flight. The stream is
+   * consumed lazily, as earlier messages complete.
+   *
+   * @param messages to be sent
+   * @return a {@link CompletableFuture} with the summary, completed when all messages are done
+   * @throws NullPointerException in case of {@code messages} is null
+   */
+  public CompletableFuture<BulkResult> sendAll(Stream<ApnsMessage> messages) {
+    return sendAll(messages, null);
+  }
+
+  /**
+   * Sends all the notifications of the given stream to Apple's APNS service
+   * keeping at most the configured number of them in flight. The stream is
+   * consumed lazily, as earlier messages complete.
+   *
+   * @param messages to be sent
+   * @param listener to be called with the outcome of each message, may be null
+   * @return a {@link CompletableFuture} with the summary, completed when all messages are done
+   * @throws NullPointerException in case of {@code messages} is null
+   */
+  public CompletableFuture<BulkResult> sendAll(Stream<ApnsMessage> messages, Consumer<SendResult> listener) {
+    Objects.requireNonNull(messages, "Messages must not be null");
+    return sendAll(messages.iterator(), listener);
+  }
+
+  private CompletableFuture<BulkResult> sendAll(Iterator<ApnsMessage> messages, Consumer<SendResult> listener) {
+    return new BulkSender(messages, this::trySendAsync, listener, getBulkLimit()).start();
+  }
+
+  /**
+   * Creates a {@link Flow.Processor} sending the messages it receives and
+   * publishing their outcomes in completion order. Messages are requested
+   * from upstream only as slots free up, keeping at most the configured
+   * number of them in flight or waiting for downstream demand. Failed
+   * messages are published as results, they don't end the stream.
+   *
+   * @return a new processor, accepting a single subscriber
+   */
+  public Flow.Processor<ApnsMessage, SendResult> processor() {
+    return processor(false);
+  }
+
+  /**
+   * Creates a {@link Flow.Processor} sending the messages it receives and
+   * publishing their outcomes in completion order. Messages are requested
+   * from upstream only as slots free up, keeping at most the configured
+   * number of them in flight or waiting for downstream demand. Failed
+   * messages are published as results, they don't end the stream.
+   *
+   * @param orderedPerDevice whether messages to the same device are sent
+   *                         one at a time, in the order they are received
+   * @return a new processor, accepting a single subscriber
+   */
+  public Flow.Processor<ApnsMessage, SendResult> processor(boolean orderedPerDevice) {
+    return new SendProcessor(this::trySendAsync, getBulkLimit(), orderedPerDevice);
+  }
+
+  private CompletableFuture<ApnsResponse> trySendAsync(ApnsMessage message) {
+    try {
+      return sendAsync(message);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Sends the same notification to many devices. The payload is serialized
+   * once and shared by every request, only the headers and the URI are
+   * built per device. The token of {@code message} itself is ignored.
+   *
+   * @param message with the payload and the headers to be sent
+   * @param tokens  of the target devices
+   * @return a {@link CompletableFuture} with the summary, completed when all devices are done
+   * @throws NullPointerException in case of {@code message} or {@code tokens} are null
+   * @throws IOException          in case the payload can't be serialized
+   */
+  public CompletableFuture<BulkResult> broadcast(ApnsMessage message, Iterable<String> tokens) throws IOException {
+    return broadcast(message, tokens, null);
+  }
+
+  /**
+   * Sends the same notification to many devices. The payload is serialized
+   * once and shared by every request, only the headers and the URI are
+   * built per device. The token of {@code message} itself is ignored.
+   *
+   * @param message  with the payload and the headers to be sent
+   * @param tokens   of the target devices
+   * @param listener to be called with the outcome of each device, may be null
+   * @return a {@link CompletableFuture} with the summary, completed when all devices are done
+   * @throws NullPointerException in case of {@code message} or {@code tokens} are null
+   * @throws IOException          in case the payload can't be serialized
+   */
+  public CompletableFuture<BulkResult> broadcast(ApnsMessage message, Iterable<String> tokens,
+                                                 Consumer<SendResult> listener) throws IOException {
+    Objects.requireNonNull(message, "Message must not be null");
+    Objects.requireNonNull(tokens, "Tokens must not be null");
+
+    var body = encode(message);
+    var iterator = tokens.iterator();
+    var messages = new Iterator<ApnsMessage>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public ApnsMessage next() {
+        return message.withToken(iterator.next());
+      }
+    };
+
+    return new BulkSender(messages, copy -> sendAsync(copy, body), listener, getBulkLimit()).start();
+  }
+
+  /**
+   * Sends again the notifications found pending in the journal when it
+   * was opened, keeping at most the configured number of them in flight.
+   * It is meant to be called once, at startup.
+   *
+   * @return a {@link CompletableFuture} with the summary, completed when all notifications are done
+   * @throws IllegalStateException in case there is no journal
+   */
+  public CompletableFuture<BulkResult> replay() {
+    return replay(null);
+  }
+
+  /**
+   * Sends again the notifications found pending in the journal when it
+   * was opened, keeping at most the configured number of them in flight.
+   * It is meant to be called once, at startup. The messages given to the
+   * listener carry the headers only, their payload is replayed as written.
+   * Tenant keys are found again by their team id and key id among the keys
+   * given to {@link Builder#addApnsKey} or used since; notifications whose
+   * key is unknown fail and are left pending.
+   *
+   * @param listener to be called with the outcome of each notification, may be null
+   * @return a {@link CompletableFuture} with the summary, completed when all notifications are done
+   * @throws IllegalStateException in case there is no journal
+   */
+  public CompletableFuture<BulkResult> replay(Consumer<SendResult> listener) {
+    if (journal == null) {
+      throw new IllegalStateException("Journal is not set");
+    }
+
+    var sequences = journal.getRecovered().iterator();
+    var entries = new IdentityHashMap<ApnsMessage, SendJournal.Entry>();
+    var messages = new Iterator<ApnsMessage>() {
+      private SendJournal.Entry next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && sequences.hasNext()) {
+          next = journal.read(sequences.next());
+        }
 
-    HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-      .uri(environment.createUri(message.getToken()))
-      .timeout(Duration.ofSeconds(CONNECTION_TIMEOUT))
-      .header("authorization", "bearer " + cachedToken)
-      .header("content-type", "application/json")
-      .header("apns-priority", message.getPriority().getCode())
-      .header("apns-topic", message.getTopic())
-      .POST(BodyPublishers.ofString(objectWriter.writeValueAsString(message)));
+        return next != null;
+      }
+
+      @Override
+      public ApnsMessage next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        var entry = next;
+        var message = entry.getMessage();
+        next = null;
+
+        if (entry.getKeyId() != null) {
+          var tenantKey = providerTokens.find(entry.getTeamId(), entry.getKeyId());
+
+          if (tenantKey != null) {
+            message = message.withApnsKey(tenantKey);
+          }
+        }
+
+        synchronized (entries) {
+          entries.put(message, entry);
+        }
+
+        return message;
+      }
+    };
+
+    return new BulkSender(messages, message -> {
+      SendJournal.Entry entry;
+
+      synchronized (entries) {
+        entry = entries.remove(message);
+      }
+
+      if (entry.getKeyId() != null && message.getApnsKey() == null) {
+        return CompletableFuture.failedFuture(new IllegalStateException(
+          "Apns key " + entry.getKeyId() + " of team " + entry.getTeamId() + " is unknown"));
+      }
+
+      return acknowledge(entry.getSequence(), deliver(message, entry.getBody()));
+    }, listener, getBulkLimit()).start();
+  }
+
+  private int getBulkLimit() {
+    return (int) Math.min(maxInFlight, (long) maxConcurrentStreams * connectionPool.size());
+  }
+
+  /**
+   * Serializes the payload of a message.
+   *
+   * @param message to be serialized
+   * @return the UTF-8 encoded JSON payload
+   */
+  private byte[] encode(ApnsMessage message) throws IOException {
+    return payloadEncoder.encode(message);
+  }
+
+  /**
+   * Build an {@link ApnsRequest}.
+   *
+   * @param message with the pertinent data
+   * @param body    the serialized payload, never modified
+   * @return a new {@link ApnsRequest}
+   */
+  ApnsRequest createRequest(ApnsMessage message, byte[] body) {
+    var headers = new LinkedHashMap<String, String>();
+    headers.put("authorization", "bearer " + providerToken(message));
+    headers.put("content-type", "application/json");
+    headers.put("apns-priority", message.getPriority().getCode());
+    headers.put("apns-topic", message.getTopic());
 
     if (message.isIdentifiable()) {
-      requestBuilder.header("apns-id", String.valueOf(message.getId()));
+      headers.put("apns-id", String.valueOf(message.getId()));
     }
 
     if (message.isCollapsable()) {
-      requestBuilder.header("apns-collapse-id", message.getCollapseId());
+      headers.put("apns-collapse-id", message.getCollapseId());
     }
 
     if (message.hasExpiration()) {
-      requestBuilder.header("apns-expiration", String.valueOf(message.getId()));
+      headers.put("apns-expiration", String.valueOf(message.getExpiration()));
     }
 
-    return requestBuilder.build();
+    var uri = message.getDeviceToken() == null
+      ? environment.createUri(message.getToken())
+      : environment.createUri(message.getDeviceToken());
+
+    return new ApnsRequest("POST", uri, headers, body,
+      message.getTimeout() == null ? requestTimeout : message.getTimeout());
   }
 
   /**
-   * Checks whether the cached token is expired or not.
+   * Gets the provider token of the tenant key of a message, or of the
+   * default key when it has none.
    *
-   * @return {@code true} if expired, {@code false} otherwise
+   * @param message to be sent
+   * @return the current provider token
+   * @throws IllegalStateException in case the token can't be generated
    */
-  private boolean isTokenExpired() {
-    return System.currentTimeMillis() - tokenTimestamp > CACHE_TTL;
+  private String providerToken(ApnsMessage message) {
+    var tenantKey = message.getApnsKey();
+    return providerTokens.get(tenantKey == null ? apnsKey : tenantKey).get();
   }
 
   /**
-   * Generates a new JWT token.
+   * Gets how many times provider tokens were generated so far, summed over
+   * all the keys.
    *
-   * @return the new generate token
+   * @return the number of token refreshes
    */
-  private String generateToken() {
-    try {
-      tokenTimestamp = System.currentTimeMillis();
-      return Jwts.builder()
-        .claim("iss", apnsKey.getTeamId())
-        .claim("iat", Long.toString(ZonedDateTime.now().withZoneSameInstant(ZoneId.of("UTC")).toEpochSecond()))
-        .setHeaderParam("kid", apnsKey.getKeyId())
-        .signWith(apnsKey.getKey(), SignatureAlgorithm.ES256)
-        .compact();
-    } catch (Exception e) {
-      throw new IllegalStateException("Wasn't possible to generate the token");
+  public long getTokenRefreshCount() {
+    return providerTokens.getRefreshCount();
+  }
+
+  /**
+   * Gets the total time spent generating provider tokens so far, summed
+   * over all the keys.
+   *
+   * @return the accumulated refresh time
+   */
+  public Duration getTokenRefreshTime() {
+    return providerTokens.getRefreshTime();
+  }
+
+  /**
+   * Gets how many distinct keys, by team id and key id, have a provider
+   * token, the default key included.
+   *
+   * @return the number of keys
+   */
+  public int getApnsKeyCount() {
+    return providerTokens.size();
+  }
+
+  /**
+   * Gets how many notifications were delayed by the rate limits so far.
+   *
+   * @return the number of delayed notifications
+   */
+  public long getRateLimitDelays() {
+    return rateLimitDelays.sum();
+  }
+
+  /**
+   * Gets the total time notifications waited on the rate limits so far.
+   *
+   * @return the accumulated delay
+   */
+  public Duration getRateLimitDelay() {
+    return Duration.ofNanos(rateLimitDelayNanos.sum());
+  }
+
+  /**
+   * Gets how many notifications were refused by the rate limits so far.
+   *
+   * @return the number of refused notifications
+   */
+  public long getRateLimitRejections() {
+    return rateLimitRejections.sum();
+  }
+
+  /**
+   * Gets how many pooled connections are established, that is got a
+   * response since they were opened.
+   *
+   * @return the number of warm connections
+   */
+  public int getWarmConnectionCount() {
+    return connectionPool.getWarmCount();
+  }
+
+  /**
+   * Gets how many notifications may currently be in flight. Without a
+   * {@link ConcurrencyLimit} it's the concurrent streams of the whole pool,
+   * with one it's the limit learned so far.
+   *
+   * @return the current limit of notifications in flight
+   */
+  public int getConcurrencyLimit() {
+    return scheduler.getLimit();
+  }
+
+  /**
+   * Gets how many notifications of the given priority are waiting for
+   * a stream.
+   *
+   * @param priority of the notifications
+   * @return the number of waiting notifications
+   */
+  public int getQueued(ApnsMessage.Priority priority) {
+    Objects.requireNonNull(priority, "Priority must not be null");
+    return scheduler.getQueued(priority);
+  }
+
+  /**
+   * Checks whether notifications are being refused because Apple's APNS
+   * service keeps failing.
+   *
+   * @return true if the circuit breaker is open, false otherwise
+   */
+  public boolean isCircuitOpen() {
+    return circuitBreaker != null && circuitBreaker.isOpen();
+  }
+
+  /**
+   * Gets how many notifications were dropped so far because they expired
+   * before they could be sent, while queued, delayed or between retries.
+   *
+   * @return the number of expired notifications
+   */
+  public long getExpiredCount() {
+    return expired.sum();
+  }
+
+  /**
+   * Gets how many notifications were replaced by newer ones with the same
+   * device token and collapse id so far.
+   *
+   * @return the number of coalesced notifications
+   */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /**
+   * Stops the background refresh of the provider tokens and the other
+   * background tasks, and closes the connections of the {@link Transport}.
+   * With the JDK transport, messages sent afterwards still go through and
+   * use the last tokens, which expire within an hour.
+   */
+  @Override
+  public void close() {
+    providerTokens.close();
+    connectionPool.close();
+
+    if (keepAlive != null) {
+      keepAlive.cancel(false);
+    }
+
+    if (topicRateLimiter != null) {
+      topicRateLimiter.close();
+    }
+
+    if (deviceRateLimiter != null) {
+      deviceRateLimiter.close();
+    }
+  }
+
+  public static class Builder {
+
+    private ApnsKey apnsKey;
+    private final List<ApnsKey> tenantKeys = new ArrayList<>();
+    private Environment environment = AppleEnvironment.PRODUCTION;
+    private TokenRefreshListener tokenRefreshListener;
+    private TokenSigner tokenSigner = TokenSigner.jjwt();
+    private int maxConcurrentStreams = MAX_CONCURRENT_STREAMS;
+    private int maxInFlight = MAX_CONCURRENT_STREAMS;
+    private int connectionPoolSize = 1;
+    private Integer immediateReserve;
+    private int immediateWeight = IMMEDIATE_WEIGHT;
+    private ConcurrencyLimit concurrencyLimit;
+    private PayloadEncoder payloadEncoder = PayloadEncoder.streaming();
+    private RetryPolicy retryPolicy = RetryPolicy.none();
+    private UnregisteredTokens unregisteredTokens;
+    private RateLimit topicRateLimit;
+    private RateLimit deviceRateLimit;
+    private Duration maxRateLimitDelay = Duration.ofSeconds(1);
+    private ApnsMetrics metrics = ApnsMetrics.NOOP;
+    private SSLContext sslContext;
+    private Executor executor;
+    private SendJournal journal;
+    private Duration coalescingWindow;
+    private boolean eagerConnect;
+    private Duration keepAliveInterval;
+    private CircuitBreakerPolicy circuitBreakerPolicy;
+    private Duration requestTimeout = Duration.ofSeconds(30);
+    private Transport transport = Transport.jdk();
+
+    /**
+     * Sets the key of messages that don't carry their own. It may be left
+     * unset when every message carries a tenant key.
+     *
+     * @param apnsKey the default key
+     * @return this builder
+     */
+    public Builder setApnsKey(ApnsKey apnsKey) {
+      this.apnsKey = apnsKey;
+      return this;
+    }
+
+    /**
+     * Adds a tenant key whose provider token is generated right away
+     * rather than on first use. Keys must be added for
+     * {@link ApnsMessaging#replay()} to find the tenant of journaled
+     * messages again.
+     *
+     * @param apnsKey the tenant key
+     * @return this builder
+     */
+    public Builder addApnsKey(ApnsKey apnsKey) {
+      this.tenantKeys.add(Objects.requireNonNull(apnsKey, "Apns key must not be null"));
+      return this;
+    }
+
+    public Builder setEnvironment(Environment environment) {
+      this.environment = environment;
+      return this;
+    }
+
+    public Builder setTokenRefreshListener(TokenRefreshListener tokenRefreshListener) {
+      this.tokenRefreshListener = tokenRefreshListener;
+      return this;
+    }
+
+    /**
+     * Sets how provider tokens are signed. Defaults to {@link TokenSigner#jjwt()};
+     * {@link TokenSigner#builtIn()} avoids loading JJWT at all.
+     *
+     * @param tokenSigner the token signer
+     * @return this builder
+     */
+    public Builder setTokenSigner(TokenSigner tokenSigner) {
+      this.tokenSigner = tokenSigner;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of concurrent streams Apple's APNS service
+     * accepts on a connection. Defaults to 1000.
+     *
+     * @param maxConcurrentStreams the stream limit advertised by the server
+     * @return this builder
+     */
+    public Builder setMaxConcurrentStreams(int maxConcurrentStreams) {
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of messages a bulk send keeps in flight.
+     * It never exceeds the maximum number of concurrent streams of all
+     * pooled connections together. Defaults to 1000.
+     *
+     * @param maxInFlight the in-flight limit of bulk sends
+     * @return this builder
+     */
+    public Builder setMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * Sets how many streams of each connection only {@code IMMEDIATE}
+     * notifications may take, so {@code THROTTLED} bulks never delay them
+     * for a stream. Defaults to a tenth of the streams of a connection.
+     *
+     * @param immediateReserve the streams reserved per connection
+     * @return this builder
+     */
+    public Builder setImmediateReserve(int immediateReserve) {
+      this.immediateReserve = immediateReserve;
+      return this;
+    }
+
+    /**
+     * Sets how many {@code IMMEDIATE} notifications take a freed stream
+     * for each {@code THROTTLED} one while both are waiting. Defaults to 4.
+     *
+     * @param immediateWeight the weight of immediate notifications
+     * @return this builder
+     */
+    public Builder setImmediateWeight(int immediateWeight) {
+      this.immediateWeight = immediateWeight;
+      return this;
+    }
+
+    /**
+     * Enables an adaptive limit of notifications in flight, learned from
+     * the latency and the failures of the requests, below the concurrent
+     * streams of the pool. By default every stream is used.
+     *
+     * @param concurrencyLimit the bounds of the limit
+     * @return this builder
+     * @see ConcurrencyLimit#adaptive()
+     */
+    public Builder setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+      this.concurrencyLimit = concurrencyLimit;
+      return this;
+    }
+
+    /**
+     * Sets how many connections are opened to Apple's APNS service.
+     * Each connection is limited to the maximum number of concurrent
+     * streams, so the pool size should grow with the fan-out.
+     * Defaults to 1.
+     *
+     * @param connectionPoolSize the number of connections
+     * @return this builder
+     */
+    public Builder setConnectionPoolSize(int connectionPoolSize) {
+      this.connectionPoolSize = connectionPoolSize;
+      return this;
+    }
+
+    /**
+     * Sets how payloads are serialized. Defaults to {@link PayloadEncoder#streaming()}.
+     *
+     * @param payloadEncoder the payload encoder
+     * @return this builder
+     */
+    public Builder setPayloadEncoder(PayloadEncoder payloadEncoder) {
+      this.payloadEncoder = payloadEncoder;
+      return this;
+    }
+
+    /**
+     * Sets how notifications refused for transient reasons are sent
+     * again. Defaults to {@link RetryPolicy#none()}.
+     *
+     * @param retryPolicy the retry policy
+     * @return this builder
+     */
+    public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * Enables a circuit breaker on the environment, so notifications are
+     * refused locally with {@link MessageRejectedException.Reason#CIRCUIT_OPEN}
+     * while Apple's APNS service keeps failing, instead of each one
+     * waiting for its timeout. Disabled by default.
+     *
+     * @param circuitBreakerPolicy when to open and close the circuit
+     * @return this builder
+     */
+    public Builder setCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+      this.circuitBreakerPolicy = circuitBreakerPolicy;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Transport} carrying the requests over HTTP/2.
+     * Defaults to {@link Transport#jdk()}.
+     *
+     * @param transport the transport
+     * @return this builder
+     */
+    public Builder setTransport(Transport transport) {
+      this.transport = transport;
+      return this;
+    }
+
+    /**
+     * Sets how long each attempt may wait for Apple's APNS service to
+     * answer, unless its message sets its own timeout. Defaults to 30
+     * seconds.
+     *
+     * @param requestTimeout the timeout of each attempt
+     * @return this builder
+     * @see ApnsMessage.Builder#setTimeout(Duration)
+     */
+    public Builder setRequestTimeout(Duration requestTimeout) {
+      this.requestTimeout = requestTimeout;
+      return this;
+    }
+
+    /**
+     * Sets the registry of unregistered device tokens. Notifications to
+     * tokens in it fail right away with a {@link MessageRejectedException},
+     * and tokens refused with {@code 410} are added to it. It can be shared
+     * by many instances. Disabled by default.
+     *
+     * @param unregisteredTokens the registry of unregistered tokens
+     * @return this builder
+     */
+    public Builder setUnregisteredTokens(UnregisteredTokens unregisteredTokens) {
+      this.unregisteredTokens = unregisteredTokens;
+      return this;
+    }
+
+    /**
+     * Sets the rate limit applied to each topic. Disabled by default.
+     *
+     * @param topicRateLimit the rate limit of each topic
+     * @return this builder
+     */
+    public Builder setTopicRateLimit(RateLimit topicRateLimit) {
+      this.topicRateLimit = topicRateLimit;
+      return this;
+    }
+
+    /**
+     * Sets the rate limit applied to each device token. Disabled by default.
+     *
+     * @param deviceRateLimit the rate limit of each device
+     * @return this builder
+     */
+    public Builder setDeviceRateLimit(RateLimit deviceRateLimit) {
+      this.deviceRateLimit = deviceRateLimit;
+      return this;
+    }
+
+    /**
+     * Sets how long a notification may be delayed by the rate limits.
+     * Notifications that would wait longer fail with a
+     * {@link MessageRejectedException}; zero refuses instead of delaying.
+     * Defaults to 1 second.
+     *
+     * @param maxRateLimitDelay the longest delay
+     * @return this builder
+     */
+    public Builder setMaxRateLimitDelay(Duration maxRateLimitDelay) {
+      this.maxRateLimitDelay = maxRateLimitDelay;
+      return this;
+    }
+
+    /**
+     * Sets the metrics receiving the events of the instance.
+     * Defaults to {@link ApnsMetrics#NOOP}.
+     *
+     * @param metrics the metrics
+     * @return this builder
+     */
+    public Builder setMetrics(ApnsMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Sets the {@link SSLContext} of the connections, for instance to trust
+     * a local APNS stub. Defaults to the JVM default context.
+     *
+     * @param sslContext the SSL context
+     * @return this builder
+     */
+    public Builder setSslContext(SSLContext sslContext) {
+      this.sslContext = sslContext;
+      return this;
+    }
+
+    /**
+     * Sets the executor the connections run their tasks on, which also
+     * completes the futures returned by {@link ApnsMessaging#sendAsync(ApnsMessage)}.
+     * It is shared by all pooled connections and never shut down by the
+     * instance. See {@link ApnsExecutors#virtualThreads()}. By default each
+     * connection of the JDK transport has its own cached thread pool, and
+     * futures are completed on the threads of the {@link Transport}.
+     *
+     * @param executor the executor
+     * @return this builder
+     */
+    public Builder setExecutor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Sets the journal notifications are written to before being sent,
+     * so those whose outcome is unknown after a crash can be sent again
+     * with {@link ApnsMessaging#replay()}. The journal is not closed by the
+     * instance. Disabled by default.
+     *
+     * @param journal the send journal
+     * @return this builder
+     */
+    public Builder setJournal(SendJournal journal) {
+      this.journal = journal;
+      return this;
+    }
+
+    /**
+     * Sets whether the pooled connections are opened when the instance is
+     * built, in the background, rather than by the first sends. See
+     * {@link ApnsMessaging#warmUp()}. Disabled by default.
+     *
+     * @param eagerConnect whether to connect right away
+     * @return this builder
+     */
+    public Builder setEagerConnect(boolean eagerConnect) {
+      this.eagerConnect = eagerConnect;
+      return this;
+    }
+
+    /**
+     * Enables keepalive requests on the connections idle for the given
+     * interval, so idle connections aren't dropped silently by the network
+     * and the next send finds them open. Disabled by default.
+     *
+     * @param keepAliveInterval how long a connection may stay idle
+     * @return this builder
+     */
+    public Builder setKeepAliveInterval(Duration keepAliveInterval) {
+      this.keepAliveInterval = keepAliveInterval;
+      return this;
+    }
+
+    /**
+     * Enables coalescing of collapsable notifications. Once a notification
+     * with a collapse id is sent, newer ones with the same device token and
+     * collapse id are held while it is in flight and for the given window;
+     * only the newest held one is then sent, the others fail with a
+     * {@link MessageRejectedException}. A zero window still coalesces the
+     * notifications arriving while one is in flight. Disabled by default.
+     *
+     * @param coalescingWindow how long newer notifications are held after one is sent
+     * @return this builder
+     */
+    public Builder setCoalescingWindow(Duration coalescingWindow) {
+      this.coalescingWindow = coalescingWindow;
+      return this;
+    }
+
+    /**
+     * Creates a new {@link ApnsMessaging} instance.
+     *
+     * @return A new {@link ApnsMessaging} instance.
+     * @throws NullPointerException     If the environment, the token signer, the payload encoder,
+     *                                  the retry policy, the rate limit delay, the request timeout,
+     *                                  the transport or the metrics are null.
+     * @throws IllegalArgumentException If any of the limits, the keepalive interval or the request
+     *                                  timeout is not positive, or the coalescing window is negative.
+     * @throws IllegalStateException    If a provider token can't be generated.
+     */
+    public ApnsMessaging build() {
+      Objects.requireNonNull(environment, "Environment must not be null");
+      Objects.requireNonNull(tokenSigner, "Token signer must not be null");
+      Objects.requireNonNull(payloadEncoder, "Payload encoder must not be null");
+      Objects.requireNonNull(retryPolicy, "Retry policy must not be null");
+      Objects.requireNonNull(maxRateLimitDelay, "Max rate limit delay must not be null");
+      Objects.requireNonNull(requestTimeout, "Request timeout must not be null");
+      Objects.requireNonNull(transport, "Transport must not be null");
+      Objects.requireNonNull(metrics, "Metrics must not be null");
+
+      if (maxConcurrentStreams < 1 || maxInFlight < 1 || connectionPoolSize < 1) {
+        throw new IllegalArgumentException("Limits must be positive");
+      }
+
+      if (immediateReserve != null && (immediateReserve < 0 || immediateReserve >= maxConcurrentStreams)
+        || immediateWeight < 1) {
+        throw new IllegalArgumentException("Immediate reserve must be less than the concurrent streams"
+          + " and immediate weight must be positive");
+      }
+
+      if (keepAliveInterval != null && (keepAliveInterval.isNegative() || keepAliveInterval.isZero())) {
+        throw new IllegalArgumentException("Keepalive interval must be positive");
+      }
+
+      if (requestTimeout.isNegative() || requestTimeout.isZero()) {
+        throw new IllegalArgumentException("Request timeout must be positive");
+      }
+
+      if (coalescingWindow != null && coalescingWindow.isNegative()) {
+        throw new IllegalArgumentException("Coalescing window must not be negative");
+      }
+
+      return new ApnsMessaging(this);
     }
   }
 
@@ -161,20 +1476,36 @@ public class ApnsMessaging {
     PRODUCTION("https://api.push.apple.com/3/device/");
 
     private final String url;
+    private final URI base;
 
     private AppleEnvironment(String url) {
       this.url = url;
+      this.base = URI.create(url);
     }
 
     /**
      * Creates an URI based on the current environment and the device token.
+     * Hex tokens are resolved against the already parsed base URI, so only
+     * the token itself is parsed.
      *
      * @param token of the device
      * @return a {@link URI} with the device token added
      */
     public URI createUri(@NonNull String token) {
       Objects.requireNonNull(token, "Token must not be null");
+
+      // anything but hex could be read as a scheme or a path, resolving it isn't safe
+      if (DeviceToken.isHex(token)) {
+        return base.resolve(URI.create(token));
+      }
+
       return URI.create(url + token);
     }
+
+    @Override
+    public URI createUri(@NonNull DeviceToken token) {
+      Objects.requireNonNull(token, "Token must not be null");
+      return base.resolve(URI.create(token.toString()));
+    }
   }
 }
@@ -0,0 +1,114 @@
+package digital.soares.apns.messaging;
+
+/**
+ * Receives the events of an {@link ApnsMessaging} instance, to be turned
+ * into metrics. Every method has an empty default, so implementations
+ * pick only the events they care about.
+ *
+ * <p>Methods are called on the sending threads and on the threads
+ * completing the requests, so they must be thread-safe and fast. Values
+ * are handed as primitives, so nothing is allocated to report them.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public interface ApnsMetrics {
+
+  /**
+   * The metrics that ignore every event, used by default.
+   */
+  ApnsMetrics NOOP = new ApnsMetrics() {
+  };
+
+  /**
+   * Called when a request is about to be written to a connection.
+   *
+   * @param message     being sent
+   * @param payloadSize the size of the payload in bytes
+   */
+  default void onRequest(ApnsMessage message, int payloadSize) {
+  }
+
+  /**
+   * Called when Apple's APNS service responds to a request.
+   *
+   * @param message      that was sent
+   * @param response     sent back
+   * @param latencyNanos the time between the request and the response
+   */
+  default void onResponse(ApnsMessage message, ApnsResponse response, long latencyNanos) {
+  }
+
+  /**
+   * Called when a request is written to a connection that never got a
+   * response yet, so it pays for the connection and TLS handshakes.
+   *
+   * @param message being sent
+   */
+  default void onColdRequest(ApnsMessage message) {
+  }
+
+  /**
+   * Called when a warm-up or keepalive request gets an answer, keeping
+   * its connection established.
+   *
+   * @param latencyNanos the time between the request and the answer,
+   *                     the handshakes included for a cold connection
+   */
+  default void onWarmUp(long latencyNanos) {
+  }
+
+  /**
+   * Called when a request fails without a response.
+   *
+   * @param message      that was sent
+   * @param failure      that prevented the response
+   * @param latencyNanos the time between the request and the failure
+   */
+  default void onFailure(ApnsMessage message, Throwable failure, long latencyNanos) {
+  }
+
+  /**
+   * Called when a notification is refused locally.
+   *
+   * @param message that was refused
+   * @param reason  of the refusal
+   */
+  default void onRejected(ApnsMessage message, MessageRejectedException.Reason reason) {
+  }
+
+  /**
+   * Called when a notification is about to be sent again.
+   *
+   * @param message being retried
+   * @param retry   the number of the retry, starting at 1
+   */
+  default void onRetry(ApnsMessage message, int retry) {
+  }
+
+  /**
+   * Called when a notification is delayed by the rate limits.
+   *
+   * @param message    being delayed
+   * @param delayNanos how long it waits
+   */
+  default void onRateLimitDelay(ApnsMessage message, long delayNanos) {
+  }
+
+  /**
+   * Called when a notification leaves the lane of its priority to take
+   * a stream.
+   *
+   * @param message   about to be sent
+   * @param waitNanos how long it waited for a stream, often zero
+   */
+  default void onQueueWait(ApnsMessage message, long waitNanos) {
+  }
+
+  /**
+   * Called when the provider token is refreshed.
+   *
+   * @param elapsedNanos how long it took to generate the new token
+   */
+  default void onTokenRefresh(long elapsedNanos) {
+  }
+}
@@ -0,0 +1,66 @@
+package digital.soares.apns.messaging;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Represents a request to Apple's APNS service, as handed to a
+ * {@link Transport}: the method, the device URI, the headers in the order
+ * they should be written, the encoded payload and how long to wait for
+ * the response.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public final class ApnsRequest {
+
+  private final String method;
+  private final URI uri;
+  private final Map<String, String> headers;
+  private final byte[] body;
+  private final Duration timeout;
+
+  ApnsRequest(String method, URI uri, Map<String, String> headers, byte[] body, Duration timeout) {
+    this.method = method;
+    this.uri = uri;
+    this.headers = Collections.unmodifiableMap(headers);
+    this.body = body;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Gets the method, {@code POST} for notifications and {@code GET} for
+   * the requests opening or keeping connections alive.
+   *
+   * @return the method
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Gets the encoded payload. It's shared with the journal and the
+   * retries, so transports must never modify it.
+   *
+   * @return the payload, or null for {@code GET} requests
+   */
+  @Nullable
+  public byte[] getBody() {
+    return body;
+  }
+
+  public Duration getTimeout() {
+    return timeout;
+  }
+}
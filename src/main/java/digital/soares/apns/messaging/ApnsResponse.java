@@ -0,0 +1,184 @@
+package digital.soares.apns.messaging;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Represents the response sent back by Apple's APNS service for a
+ * single notification.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ * @see <a href="https://developer.apple.com/documentation/usernotifications/setting_up_a_remote_notification_server/handling_notification_responses_from_apns">Handling Notification Responses from APNs</a>
+ */
+public class ApnsResponse {
+
+  private final int statusCode;
+  private final UUID apnsId;
+  private final Reason reason;
+  private final Instant timestamp;
+
+  ApnsResponse(int statusCode, UUID apnsId, Reason reason, Instant timestamp) {
+    this.statusCode = statusCode;
+    this.apnsId = apnsId;
+    this.reason = reason;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Creates a response from what a {@link Transport} read off the wire.
+   * Error bodies are parsed for their reason and timestamp.
+   *
+   * @param statusCode of the response
+   * @param apnsId     the {@code apns-id} header, if any
+   * @param body       of the response, if any
+   * @return a new {@link ApnsResponse}
+   */
+  public static ApnsResponse of(int statusCode, @Nullable String apnsId, @Nullable byte[] body) {
+    var id = apnsId == null ? null : ApnsResponseHandler.parseApnsId(apnsId);
+
+    if (statusCode == 200) {
+      return new ApnsResponse(statusCode, id, null, null);
+    }
+
+    return ApnsResponseHandler.parse(statusCode, id, body == null ? new byte[0] : body);
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * Gets the id of the notification, either the one assigned to
+   * the message or the one generated by Apple's APNS service.
+   *
+   * @return the notification id
+   */
+  @Nullable
+  public UUID getApnsId() {
+    return apnsId;
+  }
+
+  /**
+   * Gets the reason why the notification was refused.
+   *
+   * @return the reason, or null if the notification was accepted
+   */
+  @Nullable
+  public Reason getReason() {
+    return reason;
+  }
+
+  /**
+   * Gets the last time Apple's APNS service confirmed the device token
+   * was valid for the topic. Only present on {@code 410} responses.
+   *
+   * @return the moment the device token stopped being valid
+   */
+  @Nullable
+  public Instant getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Checks whether the notification was accepted.
+   *
+   * @return true if the status code is 200, false otherwise
+   */
+  public boolean isSuccessful() {
+    return statusCode == 200;
+  }
+
+  @Override
+  public String toString() {
+    return "ApnsResponse{statusCode=" + statusCode + ", apnsId=" + apnsId
+      + ", reason=" + reason + ", timestamp=" + timestamp + "}";
+  }
+
+  /**
+   * Represents the reasons Apple's APNS service gives when
+   * refusing a notification.
+   */
+  public enum Reason {
+    BAD_COLLAPSE_ID("BadCollapseId", 400),
+    BAD_DEVICE_TOKEN("BadDeviceToken", 400),
+    BAD_EXPIRATION_DATE("BadExpirationDate", 400),
+    BAD_MESSAGE_ID("BadMessageId", 400),
+    BAD_PRIORITY("BadPriority", 400),
+    BAD_TOPIC("BadTopic", 400),
+    DEVICE_TOKEN_NOT_FOR_TOPIC("DeviceTokenNotForTopic", 400),
+    DUPLICATE_HEADERS("DuplicateHeaders", 400),
+    IDLE_TIMEOUT("IdleTimeout", 400),
+    INVALID_PUSH_TYPE("InvalidPushType", 400),
+    MISSING_DEVICE_TOKEN("MissingDeviceToken", 400),
+    MISSING_TOPIC("MissingTopic", 400),
+    PAYLOAD_EMPTY("PayloadEmpty", 400),
+    TOPIC_DISALLOWED("TopicDisallowed", 400),
+    BAD_CERTIFICATE("BadCertificate", 403),
+    BAD_CERTIFICATE_ENVIRONMENT("BadCertificateEnvironment", 403),
+    EXPIRED_PROVIDER_TOKEN("ExpiredProviderToken", 403),
+    FORBIDDEN("Forbidden", 403),
+    INVALID_PROVIDER_TOKEN("InvalidProviderToken", 403),
+    MISSING_PROVIDER_TOKEN("MissingProviderToken", 403),
+    UNRELATED_KEY_ID_IN_TOKEN("UnrelatedKeyIdInToken", 403),
+    BAD_ENVIRONMENT_KEY_IN_TOKEN("BadEnvironmentKeyInToken", 403),
+    BAD_PATH("BadPath", 404),
+    METHOD_NOT_ALLOWED("MethodNotAllowed", 405),
+    EXPIRED_TOKEN("ExpiredToken", 410),
+    UNREGISTERED("Unregistered", 410),
+    PAYLOAD_TOO_LARGE("PayloadTooLarge", 413),
+    TOO_MANY_PROVIDER_TOKEN_UPDATES("TooManyProviderTokenUpdates", 429),
+    TOO_MANY_REQUESTS("TooManyRequests", 429),
+    INTERNAL_SERVER_ERROR("InternalServerError", 500),
+    SERVICE_UNAVAILABLE("ServiceUnavailable", 503),
+    SHUTDOWN("Shutdown", 503),
+    UNKNOWN("", 0);
+
+    private static final Map<String, Reason> BY_CODE = new HashMap<>();
+
+    static {
+      for (var reason : values()) {
+        BY_CODE.put(reason.code, reason);
+      }
+    }
+
+    private final String code;
+    private final int statusCode;
+
+    private Reason(String code, int statusCode) {
+      this.code = code;
+      this.statusCode = statusCode;
+    }
+
+    /**
+     * Gets the reason code specified by Apple's APNS service.
+     *
+     * @return the reason code
+     */
+    public String getCode() {
+      return code;
+    }
+
+    /**
+     * Gets the status code Apple's APNS service sends with the reason.
+     *
+     * @return the status code, or 0 for {@link #UNKNOWN}
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    /**
+     * Finds the reason matching the given code.
+     *
+     * @param code sent by Apple's APNS service
+     * @return the matching reason, or {@link #UNKNOWN} if there is none
+     */
+    public static Reason of(@Nullable String code) {
+      return code == null ? UNKNOWN : BY_CODE.getOrDefault(code, UNKNOWN);
+    }
+  }
+}
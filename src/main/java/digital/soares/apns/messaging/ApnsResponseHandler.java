@@ -0,0 +1,88 @@
+package digital.soares.apns.messaging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Turns the responses of Apple's APNS service into {@link ApnsResponse}s.
+ * Successful responses have no body, so it's discarded without decoding;
+ * error bodies are read with a streaming parser picking only the
+ * {@code reason} and {@code timestamp} fields.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class ApnsResponseHandler implements BodyHandler<ApnsResponse> {
+
+  static final ApnsResponseHandler INSTANCE = new ApnsResponseHandler();
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private ApnsResponseHandler() {
+  }
+
+  @Override
+  public BodySubscriber<ApnsResponse> apply(ResponseInfo responseInfo) {
+    var statusCode = responseInfo.statusCode();
+    var apnsId = responseInfo.headers()
+      .firstValue("apns-id")
+      .map(ApnsResponseHandler::parseApnsId)
+      .orElse(null);
+
+    if (statusCode == 200) {
+      return BodySubscribers.replacing(new ApnsResponse(statusCode, apnsId, null, null));
+    }
+
+    return BodySubscribers.mapping(BodySubscribers.ofByteArray(), body -> parse(statusCode, apnsId, body));
+  }
+
+  /**
+   * Parses an error body like {@code {"reason":"Unregistered","timestamp":1588000000000}}.
+   * Bodies that can't be parsed get the {@link ApnsResponse.Reason#UNKNOWN} reason.
+   *
+   * @param statusCode of the response
+   * @param apnsId     of the response
+   * @param body       of the response
+   * @return a new {@link ApnsResponse}
+   */
+  static ApnsResponse parse(int statusCode, UUID apnsId, byte[] body) {
+    var reason = ApnsResponse.Reason.UNKNOWN;
+    Instant timestamp = null;
+
+    try (var parser = JSON_FACTORY.createParser(body)) {
+      if (parser.nextToken() == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          var field = parser.getCurrentName();
+          var value = parser.nextToken();
+
+          if ("reason".equals(field) && value == JsonToken.VALUE_STRING) {
+            reason = ApnsResponse.Reason.of(parser.getText());
+          } else if ("timestamp".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+            timestamp = Instant.ofEpochMilli(parser.getLongValue());
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    } catch (IOException e) {
+      // Keep whatever could be read before the malformed part
+    }
+
+    return new ApnsResponse(statusCode, apnsId, reason, timestamp);
+  }
+
+  static UUID parseApnsId(String apnsId) {
+    try {
+      return UUID.fromString(apnsId);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package digital.soares.apns.messaging;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free Bloom filter over binary device tokens. Device tokens are
+ * random bytes already, so their first 16 bytes are used as the two
+ * hashes combined into the probed positions.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class BloomFilter {
+
+  private final AtomicLongArray words;
+  private final long bits;
+  private final int hashes;
+
+  /**
+   * Creates a filter sized for the expected number of entries at
+   * about one false positive out of a hundred checks.
+   *
+   * @param expectedEntries the number of entries expected to be added
+   */
+  BloomFilter(int expectedEntries) {
+    var size = Math.max(64, (long) Math.ceil(expectedEntries * 9.6));
+    this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, (size + 63) / 64));
+    this.bits = words.length() * 64L;
+    this.hashes = 7;
+  }
+
+  void add(byte[] token) {
+    var hash1 = readLong(token, 0);
+    var hash2 = readLong(token, 8) | 1;
+
+    for (var i = 0; i < hashes; i++) {
+      var bit = Math.floorMod(hash1 + i * hash2, bits);
+      var index = (int) (bit >>> 6);
+      var mask = 1L << bit;
+
+      long word;
+      do {
+        word = words.get(index);
+      } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+    }
+  }
+
+  boolean mightContain(byte[] token) {
+    var hash1 = readLong(token, 0);
+    var hash2 = readLong(token, 8) | 1;
+
+    for (var i = 0; i < hashes; i++) {
+      var bit = Math.floorMod(hash1 + i * hash2, bits);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Reads 8 bytes as a long, wrapping around short tokens.
+   */
+  private static long readLong(byte[] bytes, int offset) {
+    var value = 0L;
+
+    for (var i = 0; i < 8; i++) {
+      value = (value << 8) | (bytes[(offset + i) % bytes.length] & 0xFF);
+    }
+
+    return value;
+  }
+}
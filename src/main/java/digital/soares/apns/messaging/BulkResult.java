@@ -0,0 +1,63 @@
+package digital.soares.apns.messaging;
+
+/**
+ * Summarizes a bulk send. Only counters are kept, so the result
+ * has the same size no matter how many messages were sent; the
+ * outcome of each message is handed to the listener given to
+ * {@link ApnsMessaging#sendAll}.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class BulkResult {
+
+  private final long succeeded;
+  private final long rejected;
+  private final long failed;
+
+  BulkResult(long succeeded, long rejected, long failed) {
+    this.succeeded = succeeded;
+    this.rejected = rejected;
+    this.failed = failed;
+  }
+
+  /**
+   * Gets how many messages were handled.
+   *
+   * @return the sum of succeeded, rejected and failed messages
+   */
+  public long getTotal() {
+    return succeeded + rejected + failed;
+  }
+
+  /**
+   * Gets how many messages were accepted by Apple's APNS service.
+   *
+   * @return the number of messages that got a 200 response
+   */
+  public long getSucceeded() {
+    return succeeded;
+  }
+
+  /**
+   * Gets how many messages were refused by Apple's APNS service.
+   *
+   * @return the number of messages that got a non 200 response
+   */
+  public long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Gets how many messages didn't get any response.
+   *
+   * @return the number of messages that failed with an exception
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkResult{succeeded=" + succeeded + ", rejected=" + rejected + ", failed=" + failed + "}";
+  }
+}
@@ -0,0 +1,132 @@
+package digital.soares.apns.messaging;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sends the messages of an {@link Iterator} keeping at most a fixed number
+ * of them in flight. Messages are pulled from the source only when a slot
+ * frees up, so memory stays flat no matter how many messages there are.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class BulkSender {
+
+  private final Iterator<ApnsMessage> messages;
+  private final Function<ApnsMessage, CompletableFuture<ApnsResponse>> sender;
+  private final Consumer<SendResult> listener;
+  private final int maxInFlight;
+  private final CompletableFuture<BulkResult> result = new CompletableFuture<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger wip = new AtomicInteger();
+  private final LongAdder succeeded = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private boolean exhausted;
+  private RuntimeException sourceFailure;
+
+  BulkSender(Iterator<ApnsMessage> messages,
+             Function<ApnsMessage, CompletableFuture<ApnsResponse>> sender,
+             Consumer<SendResult> listener,
+             int maxInFlight) {
+    this.messages = messages;
+    this.sender = sender;
+    this.listener = listener;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Starts sending the messages.
+   *
+   * @return a {@link CompletableFuture} completed once every message is done
+   */
+  CompletableFuture<BulkResult> start() {
+    drain();
+    return result;
+  }
+
+  /**
+   * Fills the free slots with new messages. Only one thread drains at
+   * a time; calls made meanwhile make the draining thread loop again.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      while (!exhausted && inFlight.get() < maxInFlight) {
+        ApnsMessage message;
+
+        try {
+          if (!messages.hasNext()) {
+            exhausted = true;
+            break;
+          }
+
+          message = messages.next();
+        } catch (RuntimeException e) {
+          sourceFailure = e;
+          exhausted = true;
+          break;
+        }
+
+        inFlight.incrementAndGet();
+        send(message);
+      }
+
+      if (exhausted && inFlight.get() == 0 && !result.isDone()) {
+        complete();
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  private void send(ApnsMessage message) {
+    CompletableFuture<ApnsResponse> future;
+
+    try {
+      future = sender.apply(message);
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    future.whenComplete((response, failure) -> {
+      try {
+        var cause = failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure;
+
+        record(new SendResult(message, response, cause));
+      } finally {
+        inFlight.decrementAndGet();
+        drain();
+      }
+    });
+  }
+
+  private void record(SendResult sendResult) {
+    if (sendResult.getFailure() != null) {
+      failed.increment();
+    } else if (sendResult.isSuccessful()) {
+      succeeded.increment();
+    } else {
+      rejected.increment();
+    }
+
+    if (listener != null) {
+      listener.accept(sendResult);
+    }
+  }
+
+  private void complete() {
+    if (sourceFailure != null) {
+      result.completeExceptionally(sourceFailure);
+    } else {
+      result.complete(new BulkResult(succeeded.sum(), rejected.sum(), failed.sum()));
+    }
+  }
+}
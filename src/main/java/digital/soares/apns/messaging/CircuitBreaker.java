@@ -0,0 +1,163 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Tracks the outcomes of the requests to an {@link Environment} and
+ * decides, according to a {@link CircuitBreakerPolicy}, whether the next
+ * ones may be sent.
+ *
+ * <p>The failure rate is computed over a ring of the latest outcomes.
+ * Every transition starts a new generation, and the outcomes of requests
+ * allowed in an earlier one are ignored, so a request sent before the
+ * circuit opened never counts as a probe. Transitions are rare and
+ * outcomes cheap to record, so every method simply synchronizes on the
+ * breaker; {@link #isOpen()} is read lock-free so refusing notifications
+ * while open costs nothing.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class CircuitBreaker {
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final CircuitBreakerPolicy policy;
+  private final boolean[] outcomes;
+  private long generation;
+  private int next;
+  private int recorded;
+  private int failures;
+  private int probes;
+  private int probeSuccesses;
+  private volatile State state = State.CLOSED;
+  private volatile long openUntil;
+
+  CircuitBreaker(CircuitBreakerPolicy policy) {
+    this.policy = policy;
+    this.outcomes = new boolean[policy.getWindowSize()];
+  }
+
+  /**
+   * Checks whether the outcome of a request counts against the service.
+   *
+   * @param response of the request, if any
+   * @param failure  of the request, if any
+   * @return true if the service failed it, false otherwise
+   */
+  static boolean isFailure(ApnsResponse response, Throwable failure) {
+    if (response != null) {
+      var statusCode = response.getStatusCode();
+      return statusCode == 500 || statusCode == 503;
+    }
+
+    var cause = failure instanceof CompletionException && failure.getCause() != null
+      ? failure.getCause() : failure;
+
+    return cause instanceof IOException && !(cause instanceof MessageRejectedException);
+  }
+
+  State getState() {
+    return state;
+  }
+
+  /**
+   * Checks, without taking a probe, whether requests are refused for now.
+   *
+   * @return true if the circuit is open and not yet due for probing
+   */
+  boolean isOpen() {
+    return state == State.OPEN && System.nanoTime() - openUntil < 0;
+  }
+
+  /**
+   * Asks to send a request. Once the open duration is over, the circuit
+   * turns half open and the first requests asking become the probes.
+   *
+   * @return the generation to report the outcome with, or -1 if the request must be refused
+   */
+  synchronized long tryAcquire() {
+    if (state == State.OPEN) {
+      if (System.nanoTime() - openUntil < 0) {
+        return -1;
+      }
+
+      transition(State.HALF_OPEN);
+      probes = 0;
+      probeSuccesses = 0;
+    }
+
+    if (state == State.HALF_OPEN) {
+      if (probes == policy.getProbes()) {
+        return -1;
+      }
+
+      probes++;
+    }
+
+    return generation;
+  }
+
+  /**
+   * Records the outcome of a request allowed by {@link #tryAcquire()}.
+   *
+   * @param generation returned by {@link #tryAcquire()}
+   * @param failed     whether the service failed it
+   */
+  synchronized void onOutcome(long generation, boolean failed) {
+    if (generation != this.generation) {
+      return;
+    }
+
+    switch (state) {
+      case HALF_OPEN:
+        if (failed) {
+          open();
+        } else if (++probeSuccesses == policy.getProbes()) {
+          close();
+        }
+        break;
+      case CLOSED:
+        record(failed);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void record(boolean failed) {
+    if (recorded == outcomes.length) {
+      failures -= outcomes[next] ? 1 : 0;
+    } else {
+      recorded++;
+    }
+
+    outcomes[next] = failed;
+    failures += failed ? 1 : 0;
+    next = (next + 1) % outcomes.length;
+
+    if (recorded >= policy.getMinimumRequests()
+      && failures >= policy.getFailureRateThreshold() * recorded) {
+      open();
+    }
+  }
+
+  private void open() {
+    openUntil = System.nanoTime() + policy.getOpenDuration().toNanos();
+    transition(State.OPEN);
+  }
+
+  private void close() {
+    next = 0;
+    recorded = 0;
+    failures = 0;
+    transition(State.CLOSED);
+  }
+
+  private void transition(State state) {
+    generation++;
+    this.state = state;
+  }
+}
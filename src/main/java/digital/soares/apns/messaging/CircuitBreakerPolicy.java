@@ -0,0 +1,167 @@
+package digital.soares.apns.messaging;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Defines when requests to an {@link Environment} stop being sent because
+ * it keeps failing. Once the failure rate of the latest requests reaches
+ * the threshold, the circuit opens and notifications are refused locally
+ * right away, instead of each one waiting for its own timeout. After the
+ * open duration a few probe requests are let through; the circuit closes
+ * again if they all succeed and opens again otherwise.
+ *
+ * <p>Only {@code 500} and {@code 503} responses and I/O failures, timeouts
+ * included, count as failures. Other responses, {@code 429} included, are
+ * about the notification rather than the service.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class CircuitBreakerPolicy {
+
+  private final double failureRateThreshold;
+  private final int windowSize;
+  private final int minimumRequests;
+  private final Duration openDuration;
+  private final int probes;
+
+  private CircuitBreakerPolicy(Builder builder) {
+    if (!(builder.failureRateThreshold > 0) || builder.failureRateThreshold > 1) {
+      throw new IllegalArgumentException("Failure rate threshold must be between 0 and 1");
+    }
+
+    if (builder.windowSize < 1 || builder.minimumRequests < 1 || builder.probes < 1) {
+      throw new IllegalArgumentException("Window size, minimum requests and probes must be positive");
+    }
+
+    Objects.requireNonNull(builder.openDuration, "Open duration must not be null");
+
+    if (builder.openDuration.isNegative() || builder.openDuration.isZero()) {
+      throw new IllegalArgumentException("Open duration must be positive");
+    }
+
+    this.failureRateThreshold = builder.failureRateThreshold;
+    this.windowSize = builder.windowSize;
+    this.minimumRequests = Math.min(builder.minimumRequests, builder.windowSize);
+    this.openDuration = builder.openDuration;
+    this.probes = builder.probes;
+  }
+
+  /**
+   * Gets the policy with the default thresholds.
+   *
+   * @return a new {@link CircuitBreakerPolicy}
+   */
+  public static CircuitBreakerPolicy ofDefaults() {
+    return builder().build();
+  }
+
+  public double getFailureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  public int getMinimumRequests() {
+    return minimumRequests;
+  }
+
+  public Duration getOpenDuration() {
+    return openDuration;
+  }
+
+  public int getProbes() {
+    return probes;
+  }
+
+  /**
+   * Creates a new {@link CircuitBreakerPolicy.Builder}.
+   *
+   * @return A {@link CircuitBreakerPolicy.Builder} instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private double failureRateThreshold = 0.5;
+    private int windowSize = 100;
+    private int minimumRequests = 20;
+    private Duration openDuration = Duration.ofSeconds(30);
+    private int probes = 5;
+
+    /**
+     * Sets the share of failed requests, among the latest ones, that
+     * opens the circuit. Defaults to 0.5.
+     *
+     * @param failureRateThreshold the failure rate, between 0 exclusive and 1 inclusive
+     * @return this builder
+     */
+    public Builder setFailureRateThreshold(double failureRateThreshold) {
+      this.failureRateThreshold = failureRateThreshold;
+      return this;
+    }
+
+    /**
+     * Sets how many of the latest requests the failure rate is computed
+     * over. Defaults to 100.
+     *
+     * @param windowSize the number of requests
+     * @return this builder
+     */
+    public Builder setWindowSize(int windowSize) {
+      this.windowSize = windowSize;
+      return this;
+    }
+
+    /**
+     * Sets how many requests must be seen before the failure rate is
+     * trusted, so a couple of early failures don't open the circuit.
+     * Defaults to 20.
+     *
+     * @param minimumRequests the number of requests
+     * @return this builder
+     */
+    public Builder setMinimumRequests(int minimumRequests) {
+      this.minimumRequests = minimumRequests;
+      return this;
+    }
+
+    /**
+     * Sets how long the circuit stays open before probing the service
+     * again. Defaults to 30 seconds.
+     *
+     * @param openDuration how long notifications are refused
+     * @return this builder
+     */
+    public Builder setOpenDuration(Duration openDuration) {
+      this.openDuration = openDuration;
+      return this;
+    }
+
+    /**
+     * Sets how many requests are let through to probe the service once
+     * the open duration is over. Defaults to 5.
+     *
+     * @param probes the number of probe requests
+     * @return this builder
+     */
+    public Builder setProbes(int probes) {
+      this.probes = probes;
+      return this;
+    }
+
+    /**
+     * Creates a new {@link CircuitBreakerPolicy} instance.
+     *
+     * @return A new {@link CircuitBreakerPolicy} instance.
+     * @throws IllegalArgumentException If any of the parameters set on the builder are invalid.
+     */
+    public CircuitBreakerPolicy build() {
+      return new CircuitBreakerPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package digital.soares.apns.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces collapsable notifications to the same device. The first
+ * notification with a given token and collapse id is sent right away.
+ * Newer ones arriving while it is in flight, or within the window since
+ * it was sent, are held; each replaces the one held before it, which
+ * fails with {@link MessageRejectedException.Reason#COALESCED}. Once the
+ * notification in flight completes and the window is over, the held one
+ * is sent and a new window starts. The device shows the last of them
+ * anyway, so at most one notification per window reaches APNS.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class Coalescer {
+
+  private final long window;
+  private final BiFunction<ApnsMessage, byte[], CompletableFuture<ApnsResponse>> sender;
+  private final Consumer<ApnsMessage> listener;
+  private final Map<String, Slot> slots = new HashMap<>();
+
+  /**
+   * Creates a coalescer.
+   *
+   * @param window   in nanos, during which newer notifications are held after one is sent
+   * @param sender   sending the notifications let through
+   * @param listener to be called with each coalesced notification
+   */
+  Coalescer(long window, BiFunction<ApnsMessage, byte[], CompletableFuture<ApnsResponse>> sender,
+            Consumer<ApnsMessage> listener) {
+    this.window = window;
+    this.sender = sender;
+    this.listener = listener;
+  }
+
+  /**
+   * Sends a collapsable notification, or holds it until the notification
+   * in flight with the same token and collapse id is done.
+   *
+   * @param message to be sent, having a collapse id
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the response, or failed if coalesced
+   */
+  CompletableFuture<ApnsResponse> submit(ApnsMessage message, byte[] body) {
+    var key = message.getToken() + '\n' + message.getCollapseId();
+    var entry = new Entry(message, body);
+    Entry replaced = null;
+    boolean held;
+
+    synchronized (slots) {
+      var slot = slots.get(key);
+      held = slot != null;
+
+      if (held) {
+        replaced = slot.held;
+        slot.held = entry;
+      } else {
+        slots.put(key, new Slot());
+      }
+    }
+
+    if (!held) {
+      send(key, entry);
+    } else if (replaced != null) {
+      coalesce(replaced);
+    }
+
+    return entry.future;
+  }
+
+  /**
+   * Counts the notifications currently held.
+   *
+   * @return the number of held notifications
+   */
+  int getHeldCount() {
+    synchronized (slots) {
+      return (int) slots.values().stream()
+        .filter(slot -> slot.held != null)
+        .count();
+    }
+  }
+
+  private void send(String key, Entry entry) {
+    var windowEnd = System.nanoTime() + window;
+    CompletableFuture<ApnsResponse> future;
+
+    try {
+      future = sender.apply(entry.message, entry.body);
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    future.whenComplete((response, failure) -> {
+      if (failure != null) {
+        entry.future.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure);
+      } else {
+        entry.future.complete(response);
+      }
+
+      var remaining = windowEnd - System.nanoTime();
+
+      if (remaining > 0) {
+        SharedScheduler.get().schedule(() -> next(key), remaining, TimeUnit.NANOSECONDS);
+      } else {
+        next(key);
+      }
+    });
+  }
+
+  /**
+   * Sends the notification held for a key, if any, or forgets the key.
+   */
+  private void next(String key) {
+    Entry entry;
+
+    synchronized (slots) {
+      var slot = slots.get(key);
+      entry = slot.held;
+      slot.held = null;
+
+      if (entry == null) {
+        slots.remove(key);
+      }
+    }
+
+    if (entry != null) {
+      send(key, entry);
+    }
+  }
+
+  private void coalesce(Entry entry) {
+    listener.accept(entry.message);
+    entry.future.completeExceptionally(new MessageRejectedException(MessageRejectedException.Reason.COALESCED,
+      "Notification was replaced by a newer one with the same collapse id"));
+  }
+
+  /**
+   * The state of a token and collapse id having a notification in flight
+   * or in its window, with the newest notification held since.
+   */
+  private static class Slot {
+
+    private Entry held;
+  }
+
+  private static class Entry {
+
+    private final ApnsMessage message;
+    private final byte[] body;
+    private final CompletableFuture<ApnsResponse> future = new CompletableFuture<>();
+
+    private Entry(ApnsMessage message, byte[] body) {
+      this.message = message;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package digital.soares.apns.messaging;
+
+/**
+ * Defines the bounds of the adaptive limit of notifications in flight.
+ * The limit starts at the initial value, grows while the latency of
+ * Apple's APNS service stays close to its long-term average, and shrinks
+ * as the latency rises or requests keep failing or timing out.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class ConcurrencyLimit {
+
+  private final int initialLimit;
+  private final int minLimit;
+  private final int maxLimit;
+
+  private ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+    this.initialLimit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * Creates an adaptive limit starting at 20 notifications in flight, and
+   * never exceeding the concurrent streams of the connection pool.
+   *
+   * @return a new {@link ConcurrencyLimit}
+   */
+  public static ConcurrencyLimit adaptive() {
+    return adaptive(20, 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates an adaptive limit. The limit never exceeds the concurrent
+   * streams of the connection pool, whatever {@code maxLimit}.
+   *
+   * @param initialLimit the limit to start with
+   * @param minLimit     the lowest limit
+   * @param maxLimit     the highest limit
+   * @return a new {@link ConcurrencyLimit}
+   * @throws IllegalArgumentException in case the limits are not positive or not ordered
+   */
+  public static ConcurrencyLimit adaptive(int initialLimit, int minLimit, int maxLimit) {
+    if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+      throw new IllegalArgumentException("Limits must be positive and ordered");
+    }
+
+    return new ConcurrencyLimit(initialLimit, minLimit, maxLimit);
+  }
+
+  public int getInitialLimit() {
+    return initialLimit;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+}
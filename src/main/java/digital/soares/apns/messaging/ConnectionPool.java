@@ -0,0 +1,215 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a fixed number of {@link Transport.Channel}s, each one holding its
+ * own HTTP/2 connection to Apple's APNS service, so the traffic isn't
+ * capped by the concurrent streams allowed on a single connection.
+ * Requests go to the connection with the least streams in flight, and
+ * connections that fail are closed and replaced by fresh ones.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class ConnectionPool {
+
+  private final Supplier<Transport.Channel> channelFactory;
+  private final AtomicReferenceArray<Connection> connections;
+  private final AtomicInteger next = new AtomicInteger();
+
+  ConnectionPool(int size, Supplier<Transport.Channel> channelFactory) {
+    this.channelFactory = channelFactory;
+    this.connections = new AtomicReferenceArray<>(size);
+
+    for (var i = 0; i < size; i++) {
+      connections.set(i, new Connection(i, channelFactory.get()));
+    }
+  }
+
+  int size() {
+    return connections.length();
+  }
+
+  /**
+   * Picks the connection with the least streams in flight and counts
+   * one more stream on it. Scanning starts at a rotating position so
+   * ties are spread round-robin. Every acquired connection must be
+   * given back through {@link #release(Connection, Throwable)}.
+   *
+   * @return the least loaded connection
+   */
+  Connection acquire() {
+    var size = connections.length();
+    var start = Math.floorMod(next.getAndIncrement(), size);
+    var selected = connections.get(start);
+
+    for (var i = 1; i < size && selected.getInFlight() > 0; i++) {
+      var candidate = connections.get((start + i) % size);
+      if (candidate.getInFlight() < selected.getInFlight()) {
+        selected = candidate;
+      }
+    }
+
+    selected.inFlight.incrementAndGet();
+    return selected;
+  }
+
+  /**
+   * Counts one more stream on the connection at the given position,
+   * whatever its load. It must be given back through
+   * {@link #release(Connection, Throwable)}.
+   *
+   * @param index of the connection
+   * @return the connection
+   */
+  Connection acquire(int index) {
+    var connection = connections.get(index);
+    connection.inFlight.incrementAndGet();
+    return connection;
+  }
+
+  /**
+   * Gets the connection at the given position, without acquiring it.
+   *
+   * @param index of the connection
+   * @return the connection
+   */
+  Connection get(int index) {
+    return connections.get(index);
+  }
+
+  /**
+   * Counts the connections that got a response since they were opened.
+   *
+   * @return the number of warm connections
+   */
+  int getWarmCount() {
+    var count = 0;
+
+    for (var i = 0; i < connections.length(); i++) {
+      if (connections.get(i).isWarm()) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Gives back a connection acquired through {@link #acquire()}, replacing
+   * it by a fresh one in case the stream failed because of the connection.
+   *
+   * @param connection the acquired connection
+   * @param failure    the failure of the stream, if any
+   */
+  void release(Connection connection, Throwable failure) {
+    connection.inFlight.decrementAndGet();
+    connection.lastActivity = System.nanoTime();
+
+    if (failure == null) {
+      connection.warm = true;
+    } else if (isConnectionFailure(failure)) {
+      replace(connection);
+    }
+  }
+
+  /**
+   * Replaces a failed connection by a fresh one. When many streams of the
+   * same connection fail together, only the first one opens a new channel.
+   */
+  private void replace(Connection connection) {
+    if (connections.get(connection.index) != connection
+      || !connection.replaced.compareAndSet(false, true)) {
+      return;
+    }
+
+    Transport.Channel channel;
+    try {
+      channel = channelFactory.get();
+    } catch (RuntimeException e) {
+      connection.replaced.set(false);
+      throw e;
+    }
+
+    connections.set(connection.index, new Connection(connection.index, channel));
+    connection.channel.close();
+  }
+
+  /**
+   * Closes every connection. Requests still in flight may fail.
+   */
+  void close() {
+    for (var i = 0; i < connections.length(); i++) {
+      connections.get(i).channel.close();
+    }
+  }
+
+  /**
+   * Checks whether the failure means the connection can't be trusted anymore.
+   * Request timeouts and stream resets are not, as they happen on single
+   * streams of healthy connections.
+   */
+  private static boolean isConnectionFailure(Throwable failure) {
+    var cause = failure;
+    while (cause != null && !(cause instanceof IOException) && cause.getCause() != cause) {
+      cause = cause.getCause();
+    }
+
+    if (cause instanceof HttpConnectTimeoutException) {
+      return true;
+    }
+
+    return cause instanceof IOException
+      && !(cause instanceof HttpTimeoutException)
+      && !(cause instanceof StreamResetException);
+  }
+
+  static class Connection {
+
+    private final int index;
+    private final Transport.Channel channel;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean replaced = new AtomicBoolean();
+    private volatile boolean warm;
+    private volatile long lastActivity = System.nanoTime();
+
+    private Connection(int index, Transport.Channel channel) {
+      this.index = index;
+      this.channel = channel;
+    }
+
+    Transport.Channel getChannel() {
+      return channel;
+    }
+
+    int getInFlight() {
+      return inFlight.get();
+    }
+
+    /**
+     * Tells whether a stream of the connection got a response, so the
+     * handshakes are done. A connection replaced after a failure starts
+     * cold again.
+     *
+     * @return true if the connection is established
+     */
+    boolean isWarm() {
+      return warm;
+    }
+
+    /**
+     * Gets when a stream of the connection last completed.
+     *
+     * @return the {@link System#nanoTime()} of the last activity
+     */
+    long getLastActivity() {
+      return lastActivity;
+    }
+  }
+}
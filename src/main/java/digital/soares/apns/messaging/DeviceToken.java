@@ -0,0 +1,236 @@
+package digital.soares.apns.messaging;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The raw bytes of a device token. Today's 32 bytes tokens are packed into
+ * four longs, taking 48 bytes of heap instead of the 100 or so of their
+ * 64 characters hex string, which adds up in lists of millions of tokens.
+ * Tokens of other lengths, as Apple may issue some day, are kept in an
+ * array.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public final class DeviceToken {
+
+  private static final int COMPACT_LENGTH = 32;
+
+  /**
+   * Apple documents tokens as variable length, this bounds
+   * what is accepted from untrusted input.
+   */
+  private static final int MAX_LENGTH = 100;
+
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private final long word0;
+  private final long word1;
+  private final long word2;
+  private final long word3;
+  private final byte[] bytes;
+
+  private DeviceToken(long word0, long word1, long word2, long word3) {
+    this.word0 = word0;
+    this.word1 = word1;
+    this.word2 = word2;
+    this.word3 = word3;
+    this.bytes = null;
+  }
+
+  private DeviceToken(byte[] bytes) {
+    this.word0 = 0;
+    this.word1 = 0;
+    this.word2 = 0;
+    this.word3 = 0;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Parses a token from its hex representation, in either case.
+   *
+   * @param hex the hex digits of the token
+   * @return the parsed {@link DeviceToken}
+   * @throws NullPointerException     in case of {@code hex} is null
+   * @throws IllegalArgumentException in case of {@code hex} is not an even number of
+   *                                  up to 200 hex digits
+   */
+  public static DeviceToken parse(@NonNull CharSequence hex) {
+    Objects.requireNonNull(hex, "Token must not be null");
+
+    var length = hex.length();
+    if (length == 0 || length % 2 != 0 || length > 2 * MAX_LENGTH) {
+      throw new IllegalArgumentException("Token must be an even number of up to " + 2 * MAX_LENGTH + " hex digits");
+    }
+
+    if (length == 2 * COMPACT_LENGTH) {
+      return new DeviceToken(parseWord(hex, 0), parseWord(hex, 16), parseWord(hex, 32), parseWord(hex, 48));
+    }
+
+    var bytes = new byte[length / 2];
+    for (var i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (digit(hex, 2 * i) << 4 | digit(hex, 2 * i + 1));
+    }
+
+    return new DeviceToken(bytes);
+  }
+
+  /**
+   * Creates a token from its raw bytes.
+   *
+   * @param bytes of the token, copied
+   * @return the {@link DeviceToken}
+   * @throws NullPointerException     in case of {@code bytes} is null
+   * @throws IllegalArgumentException in case of {@code bytes} is empty or longer than 100 bytes
+   */
+  public static DeviceToken of(@NonNull byte[] bytes) {
+    Objects.requireNonNull(bytes, "Bytes must not be null");
+
+    if (bytes.length == 0 || bytes.length > MAX_LENGTH) {
+      throw new IllegalArgumentException("Token must have between 1 and " + MAX_LENGTH + " bytes");
+    }
+
+    if (bytes.length == COMPACT_LENGTH) {
+      return new DeviceToken(word(bytes, 0), word(bytes, 8), word(bytes, 16), word(bytes, 24));
+    }
+
+    return new DeviceToken(bytes.clone());
+  }
+
+  /**
+   * Gets the number of bytes of the token.
+   *
+   * @return the length in bytes
+   */
+  public int length() {
+    return bytes == null ? COMPACT_LENGTH : bytes.length;
+  }
+
+  /**
+   * Gets the raw bytes of the token.
+   *
+   * @return a new array with the bytes
+   */
+  public byte[] toBytes() {
+    if (bytes != null) {
+      return bytes.clone();
+    }
+
+    var result = new byte[COMPACT_LENGTH];
+    putWord(result, 0, word0);
+    putWord(result, 8, word1);
+    putWord(result, 16, word2);
+    putWord(result, 24, word3);
+    return result;
+  }
+
+  /**
+   * Gets the lowercase hex representation of the token, as sent
+   * in the request path.
+   *
+   * @return the hex digits of the token
+   */
+  @Override
+  public String toString() {
+    var raw = bytes == null ? toBytes() : bytes;
+    var hex = new byte[2 * raw.length];
+
+    for (var i = 0; i < raw.length; i++) {
+      hex[2 * i] = HEX_DIGITS[(raw[i] >> 4) & 0xF];
+      hex[2 * i + 1] = HEX_DIGITS[raw[i] & 0xF];
+    }
+
+    return new String(hex, StandardCharsets.US_ASCII);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (!(o instanceof DeviceToken)) {
+      return false;
+    }
+
+    var that = (DeviceToken) o;
+    return word0 == that.word0 && word1 == that.word1 && word2 == that.word2 && word3 == that.word3
+      && Arrays.equals(bytes, that.bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    if (bytes != null) {
+      return Arrays.hashCode(bytes);
+    }
+
+    return Long.hashCode(word0) * 31 * 31 * 31 + Long.hashCode(word1) * 31 * 31
+      + Long.hashCode(word2) * 31 + Long.hashCode(word3);
+  }
+
+  /**
+   * Checks whether a string is made of hex digits only, so it can't
+   * change anything but the last segment of a request path.
+   *
+   * @param token to be checked
+   * @return true if every character is a hex digit
+   */
+  static boolean isHex(String token) {
+    for (var i = 0; i < token.length(); i++) {
+      if (digit(token.charAt(i)) < 0) {
+        return false;
+      }
+    }
+
+    return token.length() > 0;
+  }
+
+  private static long parseWord(CharSequence hex, int offset) {
+    var word = 0L;
+
+    for (var i = offset; i < offset + 16; i++) {
+      word = word << 4 | digit(hex, i);
+    }
+
+    return word;
+  }
+
+  private static int digit(CharSequence hex, int index) {
+    var digit = digit(hex.charAt(index));
+
+    if (digit < 0) {
+      throw new IllegalArgumentException("Token has a non hex digit at " + index);
+    }
+
+    return digit;
+  }
+
+  static int digit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+
+    var lower = c | 0x20;
+    return lower >= 'a' && lower <= 'f' ? lower - 'a' + 10 : -1;
+  }
+
+  private static long word(byte[] bytes, int offset) {
+    var word = 0L;
+
+    for (var i = offset; i < offset + 8; i++) {
+      word = word << 8 | (bytes[i] & 0xFF);
+    }
+
+    return word;
+  }
+
+  private static void putWord(byte[] bytes, int offset, long word) {
+    for (var i = offset + 7; i >= offset; i--) {
+      bytes[i] = (byte) word;
+      word >>>= 8;
+    }
+  }
+}
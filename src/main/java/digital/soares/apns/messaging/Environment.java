@@ -7,4 +7,15 @@ import java.net.URI;
 public interface Environment {
 
   URI createUri(@NonNull String token);
+
+  /**
+   * Creates the request URI of a device. Implementations may skip the
+   * validation the token already went through.
+   *
+   * @param token of the device
+   * @return a {@link URI} with the device token added
+   */
+  default URI createUri(@NonNull DeviceToken token) {
+    return createUri(token.toString());
+  }
 }
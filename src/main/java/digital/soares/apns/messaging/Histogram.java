@@ -0,0 +1,92 @@
+package digital.soares.apns.messaging;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values with log-linear buckets:
+ * each power of two is split in 16 buckets, so any recorded value is
+ * reported within 6.25% of its actual value while the whole range of
+ * a long fits in less than a thousand counters.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  void record(long value) {
+    var clamped = Math.max(0, value);
+
+    counts.incrementAndGet(indexOf(clamped));
+    count.increment();
+    sum.add(clamped);
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * Gets the value below which the given fraction of the recorded values fall.
+   *
+   * @param percentile between 0 and 100
+   * @return the highest value of the bucket holding the percentile, or 0 if empty
+   */
+  long getPercentile(double percentile) {
+    var total = 0L;
+    var snapshot = new long[BUCKETS];
+
+    for (var i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    var rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+    var seen = 0L;
+
+    for (var i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return highestValueOf(i);
+      }
+    }
+
+    return highestValueOf(BUCKETS - 1);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    var exponent = 63 - Long.numberOfLeadingZeros(value);
+    var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    var exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    var subBucket = index % SUB_BUCKETS;
+    var width = 1L << (exponent - SUB_BUCKET_BITS);
+    return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+  }
+}
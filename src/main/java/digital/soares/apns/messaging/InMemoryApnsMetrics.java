@@ -0,0 +1,276 @@
+package digital.soares.apns.messaging;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of an {@link ApnsMessaging} instance in memory, to be
+ * scraped by any monitoring system. Counters are lock-free and latencies
+ * and payload sizes are recorded in log-linear histograms.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class InMemoryApnsMetrics implements ApnsMetrics {
+
+  private static final int MAX_STATUS_CODE = 600;
+
+  private final Histogram latency = new Histogram();
+  private final Histogram payloadSize = new Histogram();
+  private final Histogram warmUpLatency = new Histogram();
+  private final Histogram immediateQueueWait = new Histogram();
+  private final Histogram throttledQueueWait = new Histogram();
+  private final AtomicLong inFlight = new AtomicLong();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder coldRequests = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder rateLimitDelays = new LongAdder();
+  private final LongAdder rateLimitDelayNanos = new LongAdder();
+  private final LongAdder tokenRefreshes = new LongAdder();
+  private final LongAdder tokenRefreshNanos = new LongAdder();
+  private final AtomicLongArray statusCodes = new AtomicLongArray(MAX_STATUS_CODE);
+  private final AtomicLongArray reasons = new AtomicLongArray(ApnsResponse.Reason.values().length);
+  private final AtomicLongArray rejections = new AtomicLongArray(MessageRejectedException.Reason.values().length);
+
+  @Override
+  public void onRequest(ApnsMessage message, int payloadSize) {
+    inFlight.incrementAndGet();
+    this.payloadSize.record(payloadSize);
+  }
+
+  @Override
+  public void onResponse(ApnsMessage message, ApnsResponse response, long latencyNanos) {
+    inFlight.decrementAndGet();
+    latency.record(latencyNanos);
+
+    var statusCode = response.getStatusCode();
+    if (statusCode >= 0 && statusCode < MAX_STATUS_CODE) {
+      statusCodes.incrementAndGet(statusCode);
+    }
+
+    if (response.getReason() != null) {
+      reasons.incrementAndGet(response.getReason().ordinal());
+    }
+  }
+
+  @Override
+  public void onColdRequest(ApnsMessage message) {
+    coldRequests.increment();
+  }
+
+  @Override
+  public void onWarmUp(long latencyNanos) {
+    warmUpLatency.record(latencyNanos);
+  }
+
+  @Override
+  public void onFailure(ApnsMessage message, Throwable failure, long latencyNanos) {
+    inFlight.decrementAndGet();
+    latency.record(latencyNanos);
+    failures.increment();
+  }
+
+  @Override
+  public void onRejected(ApnsMessage message, MessageRejectedException.Reason reason) {
+    rejections.incrementAndGet(reason.ordinal());
+  }
+
+  @Override
+  public void onRetry(ApnsMessage message, int retry) {
+    retries.increment();
+  }
+
+  @Override
+  public void onRateLimitDelay(ApnsMessage message, long delayNanos) {
+    rateLimitDelays.increment();
+    rateLimitDelayNanos.add(delayNanos);
+  }
+
+  @Override
+  public void onQueueWait(ApnsMessage message, long waitNanos) {
+    queueWait(message.getPriority()).record(waitNanos);
+  }
+
+  @Override
+  public void onTokenRefresh(long elapsedNanos) {
+    tokenRefreshes.increment();
+    tokenRefreshNanos.add(elapsedNanos);
+  }
+
+  /**
+   * Gets how many requests got a response or failed.
+   *
+   * @return the number of completed requests
+   */
+  public long getRequests() {
+    return latency.getCount();
+  }
+
+  /**
+   * Gets how many requests are waiting for a response.
+   *
+   * @return the number of streams in flight
+   */
+  public long getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Gets the request latency at the given percentile, like 50, 99 or 99.9.
+   *
+   * @param percentile between 0 and 100
+   * @return the latency, within 6.25% of the actual value
+   */
+  public Duration getLatency(double percentile) {
+    return Duration.ofNanos(latency.getPercentile(percentile));
+  }
+
+  /**
+   * Gets the time notifications of the given priority waited for a stream
+   * at the given percentile.
+   *
+   * @param priority   of the lane
+   * @param percentile between 0 and 100
+   * @return the queue wait, within 6.25% of the actual value
+   */
+  public Duration getQueueWait(ApnsMessage.Priority priority, double percentile) {
+    return Duration.ofNanos(queueWait(priority).getPercentile(percentile));
+  }
+
+  /**
+   * Gets the payload size at the given percentile.
+   *
+   * @param percentile between 0 and 100
+   * @return the payload size in bytes, within 6.25% of the actual value
+   */
+  public long getPayloadSize(double percentile) {
+    return payloadSize.getPercentile(percentile);
+  }
+
+  /**
+   * Gets the sum of the sizes of every payload sent.
+   *
+   * @return the total payload size in bytes
+   */
+  public long getPayloadBytes() {
+    return payloadSize.getSum();
+  }
+
+  /**
+   * Gets how many responses had the given status code.
+   *
+   * @param statusCode of the responses
+   * @return the number of responses
+   */
+  public long getResponses(int statusCode) {
+    return statusCode >= 0 && statusCode < MAX_STATUS_CODE ? statusCodes.get(statusCode) : 0;
+  }
+
+  /**
+   * Gets how many responses had the given reason.
+   *
+   * @param reason of the responses
+   * @return the number of responses
+   */
+  public long getResponses(ApnsResponse.Reason reason) {
+    return reasons.get(reason.ordinal());
+  }
+
+  /**
+   * Gets how many requests were written to connections not established
+   * yet, paying for the handshakes.
+   *
+   * @return the number of cold requests
+   */
+  public long getColdRequests() {
+    return coldRequests.sum();
+  }
+
+  /**
+   * Gets how many warm-up and keepalive requests got an answer.
+   *
+   * @return the number of warm-ups
+   */
+  public long getWarmUps() {
+    return warmUpLatency.getCount();
+  }
+
+  /**
+   * Gets the latency of warm-up and keepalive requests at the given percentile.
+   *
+   * @param percentile between 0 and 100
+   * @return the latency, within 6.25% of the actual value
+   */
+  public Duration getWarmUpLatency(double percentile) {
+    return Duration.ofNanos(warmUpLatency.getPercentile(percentile));
+  }
+
+  /**
+   * Gets how many requests failed without a response.
+   *
+   * @return the number of failures
+   */
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  /**
+   * Gets how many notifications were refused locally for the given reason.
+   *
+   * @param reason of the refusals
+   * @return the number of refused notifications
+   */
+  public long getRejections(MessageRejectedException.Reason reason) {
+    return rejections.get(reason.ordinal());
+  }
+
+  /**
+   * Gets how many attempts were scheduled again by the retry policy.
+   *
+   * @return the number of retries
+   */
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  /**
+   * Gets how many attempts were delayed by the rate limits.
+   *
+   * @return the number of delayed attempts
+   */
+  public long getRateLimitDelays() {
+    return rateLimitDelays.sum();
+  }
+
+  /**
+   * Gets the sum of the delays imposed by the rate limits.
+   *
+   * @return the total rate limit delay
+   */
+  public Duration getRateLimitDelay() {
+    return Duration.ofNanos(rateLimitDelayNanos.sum());
+  }
+
+  /**
+   * Gets how many provider tokens were signed.
+   *
+   * @return the number of token refreshes
+   */
+  public long getTokenRefreshes() {
+    return tokenRefreshes.sum();
+  }
+
+  /**
+   * Gets the sum of the time spent signing provider tokens.
+   *
+   * @return the total token refresh time
+   */
+  public Duration getTokenRefreshTime() {
+    return Duration.ofNanos(tokenRefreshNanos.sum());
+  }
+
+  private Histogram queueWait(ApnsMessage.Priority priority) {
+    return priority == ApnsMessage.Priority.THROTTLED ? throttledQueueWait : immediateQueueWait;
+  }
+}
@@ -0,0 +1,32 @@
+package digital.soares.apns.messaging;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes payloads with Jackson, including only the fields
+ * annotated with the {@link ApnsView}.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class JacksonPayloadEncoder implements PayloadEncoder {
+
+  private final ObjectWriter objectWriter;
+
+  JacksonPayloadEncoder() {
+    this.objectWriter = new ObjectMapper()
+      .disable(MapperFeature.DEFAULT_VIEW_INCLUSION)
+      .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
+      .writerWithView(ApnsView.class);
+  }
+
+  @Override
+  public byte[] encode(ApnsMessage message) throws IOException {
+    return objectWriter.writeValueAsString(message).getBytes(StandardCharsets.UTF_8);
+  }
+}
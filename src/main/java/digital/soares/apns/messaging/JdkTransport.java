@@ -0,0 +1,57 @@
+package digital.soares.apns.messaging;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The {@link Transport} built on {@link HttpClient}, one client per
+ * channel since a client keeps a single HTTP/2 connection per host.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class JdkTransport implements Transport {
+
+  static final JdkTransport INSTANCE = new JdkTransport();
+
+  private JdkTransport() {
+  }
+
+  @Override
+  public Channel open(SSLContext sslContext, Executor executor) {
+    var clientBuilder = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2);
+
+    if (sslContext != null) {
+      clientBuilder.sslContext(sslContext);
+    }
+
+    if (executor != null) {
+      clientBuilder.executor(executor);
+    }
+
+    var client = clientBuilder.build();
+    return request -> send(client, request);
+  }
+
+  private static CompletableFuture<ApnsResponse> send(HttpClient client, ApnsRequest request) {
+    var requestBuilder = HttpRequest.newBuilder()
+      .uri(request.getUri())
+      .timeout(request.getTimeout());
+
+    request.getHeaders().forEach(requestBuilder::header);
+
+    if (request.getBody() == null) {
+      requestBuilder.method(request.getMethod(), BodyPublishers.noBody());
+    } else {
+      requestBuilder.method(request.getMethod(), BodyPublishers.ofByteArray(request.getBody()));
+    }
+
+    return client.sendAsync(requestBuilder.build(), ApnsResponseHandler.INSTANCE)
+      .thenApply(HttpResponse::body);
+  }
+}
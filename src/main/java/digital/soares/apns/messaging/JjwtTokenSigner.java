@@ -0,0 +1,24 @@
+package digital.soares.apns.messaging;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * Signs provider tokens with JJWT.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class JjwtTokenSigner implements TokenSigner {
+
+  static final JjwtTokenSigner INSTANCE = new JjwtTokenSigner();
+
+  @Override
+  public String sign(ApnsKey apnsKey, long issuedAt) {
+    return Jwts.builder()
+      .claim("iss", apnsKey.getTeamId())
+      .claim("iat", Long.toString(issuedAt))
+      .setHeaderParam("kid", apnsKey.getKeyId())
+      .signWith(apnsKey.getKey(), SignatureAlgorithm.ES256)
+      .compact();
+  }
+}
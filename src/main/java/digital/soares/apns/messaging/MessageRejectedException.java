@@ -0,0 +1,64 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a notification is refused locally, without ever
+ * reaching Apple's APNS service.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class MessageRejectedException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Reason reason;
+
+  MessageRejectedException(Reason reason, String message) {
+    super(message);
+    this.reason = reason;
+  }
+
+  /**
+   * Gets why the notification was refused.
+   *
+   * @return the reason of the refusal
+   */
+  public Reason getReason() {
+    return reason;
+  }
+
+  /**
+   * Represents the reasons to refuse a notification locally.
+   */
+  public enum Reason {
+
+    /**
+     * The device token is known to be no longer valid.
+     */
+    UNREGISTERED,
+
+    /**
+     * The rate limit would delay the notification for too long.
+     */
+    RATE_LIMITED,
+
+    /**
+     * A newer notification with the same device token and collapse id
+     * replaced it before it was sent.
+     */
+    COALESCED,
+
+    /**
+     * Apple's APNS service keeps failing, so the circuit breaker of the
+     * environment refuses notifications for a while.
+     */
+    CIRCUIT_OPEN,
+
+    /**
+     * The expiration of the notification passed before it could be sent,
+     * Apple's APNS service would have discarded it anyway.
+     */
+    EXPIRED
+  }
+}
@@ -0,0 +1,44 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+
+/**
+ * Serializes the payload of an {@link ApnsMessage} into the JSON
+ * document sent to Apple's APNS service.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public interface PayloadEncoder {
+
+  /**
+   * Serializes the payload of the given message.
+   *
+   * @param message to be serialized
+   * @return the UTF-8 encoded JSON payload, never modified afterwards
+   * @throws IOException in case the payload can't be serialized
+   */
+  byte[] encode(ApnsMessage message) throws IOException;
+
+  /**
+   * Gets the hand-written encoder writing UTF-8 straight into a reusable
+   * buffer, without reflection nor intermediate strings. This is the
+   * default encoder.
+   *
+   * @return the streaming {@link PayloadEncoder}
+   */
+  static PayloadEncoder streaming() {
+    return StreamingPayloadEncoder.INSTANCE;
+  }
+
+  /**
+   * Creates an encoder backed by a Jackson {@code ObjectWriter} using the
+   * {@link ApnsView} annotations. It produces exactly the same bytes as
+   * the streaming encoder, lone surrogates included, which both replace
+   * with {@code '?'}.
+   *
+   * @return a new Jackson based {@link PayloadEncoder}
+   */
+  static PayloadEncoder jackson() {
+    return new JacksonPayloadEncoder();
+  }
+}
@@ -0,0 +1,195 @@
+package digital.soares.apns.messaging;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands out the streams of the connection pool to the notifications, one
+ * lane per {@link ApnsMessage.Priority}. Notifications wait in their lane
+ * while every stream is taken and are then started weighted fair: up to
+ * {@code immediateWeight} {@code IMMEDIATE} ones for each {@code THROTTLED}
+ * one while both lanes are waiting. A share of the streams is reserved to
+ * {@code IMMEDIATE} notifications, so a bulk of throttled ones never takes
+ * them all.
+ *
+ * <p>With an {@link AdaptiveLimiter}, the streams in use are further held
+ * to its current limit, which learns from the latency and the failures of
+ * every completed request. The reserve then shrinks along with the limit.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class PriorityScheduler {
+
+  private final int capacity;
+  private final int reserve;
+  private final int immediateWeight;
+  private final AdaptiveLimiter limiter;
+  private final ApnsMetrics metrics;
+  private final Queue<Task> immediate = new ConcurrentLinkedQueue<>();
+  private final Queue<Task> throttled = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger throttledInFlight = new AtomicInteger();
+  private final AtomicInteger wip = new AtomicInteger();
+  private int immediateCredit;
+
+  /**
+   * Creates a scheduler.
+   *
+   * @param capacity        the number of streams of the whole pool
+   * @param reserve         the number of streams only {@code IMMEDIATE} notifications may take
+   * @param immediateWeight how many {@code IMMEDIATE} notifications start for each {@code THROTTLED} one
+   * @param limiter         the adaptive limit of streams in use, or {@code null} to use them all
+   * @param metrics         to report the time spent waiting in a lane
+   */
+  PriorityScheduler(int capacity, int reserve, int immediateWeight, AdaptiveLimiter limiter, ApnsMetrics metrics) {
+    this.capacity = capacity;
+    this.reserve = reserve;
+    this.immediateWeight = immediateWeight;
+    this.immediateCredit = immediateWeight;
+    this.limiter = limiter;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts an attempt as soon as a stream is free for its priority.
+   *
+   * @param message to be sent
+   * @param attempt making the request, called once a stream is taken
+   * @return a {@link CompletableFuture} completed with the outcome of the attempt
+   */
+  CompletableFuture<ApnsResponse> submit(ApnsMessage message, Supplier<CompletableFuture<ApnsResponse>> attempt) {
+    var task = new Task(message, attempt);
+
+    if (message.getPriority() == ApnsMessage.Priority.THROTTLED) {
+      throttled.add(task);
+    } else {
+      immediate.add(task);
+    }
+
+    drain();
+    return task.result;
+  }
+
+  /**
+   * Counts the notifications waiting in the lane of a priority.
+   *
+   * @param priority of the lane
+   * @return the number of waiting notifications
+   */
+  int getQueued(ApnsMessage.Priority priority) {
+    return priority == ApnsMessage.Priority.THROTTLED ? throttled.size() : immediate.size();
+  }
+
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Gets how many notifications may currently be in flight.
+   *
+   * @return the current limit
+   */
+  int getLimit() {
+    return limiter == null ? capacity : Math.min(capacity, limiter.getLimit());
+  }
+
+  /**
+   * Starts the waiting notifications the free streams allow. Only one
+   * thread drains at a time; calls made meanwhile make the draining
+   * thread loop again.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      Task task;
+      var limit = getLimit();
+
+      while (inFlight.get() < limit && (task = next(limit)) != null) {
+        start(task);
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  /**
+   * Picks the next notification to start, if any may start. Throttled ones
+   * are left waiting when only reserved streams are free, and get a turn
+   * after every {@code immediateWeight} immediate ones.
+   */
+  private Task next(int limit) {
+    var throttledLimit = Math.max(1, limit - (int) ((long) reserve * limit / capacity));
+    var throttledReady = !throttled.isEmpty() && throttledInFlight.get() < throttledLimit;
+
+    if (!immediate.isEmpty() && (immediateCredit > 0 || !throttledReady)) {
+      immediateCredit--;
+      return immediate.poll();
+    }
+
+    if (throttledReady) {
+      immediateCredit = immediateWeight;
+      return throttled.poll();
+    }
+
+    return null;
+  }
+
+  private void start(Task task) {
+    var isThrottled = task.message.getPriority() == ApnsMessage.Priority.THROTTLED;
+
+    var concurrency = inFlight.incrementAndGet();
+    if (isThrottled) {
+      throttledInFlight.incrementAndGet();
+    }
+
+    var startedAt = System.nanoTime();
+    metrics.onQueueWait(task.message, startedAt - task.queuedAt);
+
+    CompletableFuture<ApnsResponse> future;
+
+    try {
+      future = task.attempt.get();
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    future.whenComplete((response, failure) -> {
+      inFlight.decrementAndGet();
+      if (isThrottled) {
+        throttledInFlight.decrementAndGet();
+      }
+
+      // requests refused locally never reached the network, they say nothing of its latency;
+      // a 429 is about a single device, not the load of the service
+      var dropped = CircuitBreaker.isFailure(response, failure);
+      if (limiter != null && (response != null || dropped)) {
+        limiter.onSample(startedAt, System.nanoTime(), concurrency, dropped);
+      }
+
+      if (failure != null) {
+        task.result.completeExceptionally(failure);
+      } else {
+        task.result.complete(response);
+      }
+
+      drain();
+    });
+  }
+
+  private static class Task {
+
+    private final ApnsMessage message;
+    private final Supplier<CompletableFuture<ApnsResponse>> attempt;
+    private final long queuedAt = System.nanoTime();
+    private final CompletableFuture<ApnsResponse> result = new CompletableFuture<>();
+
+    private Task(ApnsMessage message, Supplier<CompletableFuture<ApnsResponse>> attempt) {
+      this.message = message;
+      this.attempt = attempt;
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package digital.soares.apns.messaging;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the JWT token used to authenticate against Apple's APNS service.
+ * The token is generated on creation and then refreshed on the shared
+ * scheduler before it expires, so reading it is a single volatile read
+ * and never signs inline.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ * @see <a href="https://developer.apple.com/documentation/usernotifications/setting_up_a_remote_notification_server/establishing_a_token-based_connection_to_apns">Token-Based Connection to APNs</a>
+ */
+class ProviderToken implements AutoCloseable {
+
+  /**
+   * Apple rejects tokens older than one hour and refuses
+   * refreshes more frequent than every 20 minutes.
+   */
+  static final long REFRESH_INTERVAL = 50 * 60 * 1000;
+  static final long RETRY_INTERVAL = 60 * 1000;
+
+  private final ApnsKey apnsKey;
+  private final TokenSigner signer;
+  private final TokenRefreshListener listener;
+  private final AtomicLong refreshCount = new AtomicLong();
+  private final AtomicLong refreshNanos = new AtomicLong();
+  private volatile String token;
+  private volatile ScheduledFuture<?> nextRefresh;
+  private volatile boolean closed;
+
+  ProviderToken(ApnsKey apnsKey, TokenSigner signer, TokenRefreshListener listener) {
+    this.apnsKey = apnsKey;
+    this.signer = signer;
+    this.listener = listener;
+
+    refresh();
+    schedule(REFRESH_INTERVAL);
+  }
+
+  /**
+   * Gets the current token.
+   *
+   * @return the current token
+   */
+  String get() {
+    return token;
+  }
+
+  ApnsKey getApnsKey() {
+    return apnsKey;
+  }
+
+  long getRefreshCount() {
+    return refreshCount.get();
+  }
+
+  Duration getRefreshTime() {
+    return Duration.ofNanos(refreshNanos.get());
+  }
+
+  /**
+   * Generates a new token replacing the current one.
+   *
+   * @throws IllegalStateException in case the token can't be generated
+   */
+  void refresh() {
+    var start = System.nanoTime();
+    var newToken = generateToken();
+    var elapsed = System.nanoTime() - start;
+
+    token = newToken;
+    refreshNanos.addAndGet(elapsed);
+
+    var count = refreshCount.incrementAndGet();
+    if (listener != null) {
+      try {
+        listener.onRefresh(count, Duration.ofNanos(elapsed));
+      } catch (RuntimeException e) {
+        // A failing listener must not make the token be refreshed again
+      }
+    }
+  }
+
+  /**
+   * Stops refreshing the token.
+   */
+  @Override
+  public void close() {
+    closed = true;
+
+    var refresh = nextRefresh;
+    if (refresh != null) {
+      refresh.cancel(false);
+    }
+  }
+
+  private void scheduledRefresh() {
+    if (closed) {
+      return;
+    }
+
+    try {
+      refresh();
+      schedule(REFRESH_INTERVAL);
+    } catch (RuntimeException e) {
+      // The current token is still valid for a while, try again soon
+      schedule(RETRY_INTERVAL);
+    }
+  }
+
+  private void schedule(long delay) {
+    if (!closed) {
+      nextRefresh = SharedScheduler.get().schedule(this::scheduledRefresh, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Generates a new JWT token.
+   *
+   * @return the new generate token
+   */
+  private String generateToken() {
+    try {
+      return signer.sign(apnsKey, Instant.now().getEpochSecond());
+    } catch (Exception e) {
+      throw new IllegalStateException("Wasn't possible to generate the token", e);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package digital.soares.apns.messaging;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a {@link ProviderToken} per team id and key id, so a single
+ * instance can send on behalf of many tenants. Tokens are created the
+ * first time a key is used and then refreshed on the shared scheduler
+ * like any other; each one costs a few hundred bytes.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class ProviderTokens implements AutoCloseable {
+
+  private final TokenSigner signer;
+  private final TokenRefreshListener listener;
+  private final ConcurrentMap<String, ProviderToken> tokens = new ConcurrentHashMap<>();
+  private volatile boolean closed;
+
+  ProviderTokens(TokenSigner signer, TokenRefreshListener listener) {
+    this.signer = signer;
+    this.listener = listener;
+  }
+
+  /**
+   * Gets the token of a key, generating it on first use. Keys with the
+   * same team id and key id share the token of the first one.
+   *
+   * @param apnsKey to get the token for
+   * @return the provider token
+   * @throws IllegalStateException in case the token can't be generated
+   */
+  ProviderToken get(ApnsKey apnsKey) {
+    var token = tokens.get(apnsKey.getId());
+
+    if (token == null) {
+      token = tokens.computeIfAbsent(apnsKey.getId(), id -> new ProviderToken(apnsKey, signer, listener));
+
+      if (closed) {
+        token.close();
+      }
+    }
+
+    return token;
+  }
+
+  /**
+   * Finds a key already used, by its team id and key id.
+   *
+   * @param teamId of the key
+   * @param keyId  of the key
+   * @return the key, or null if it was never used
+   */
+  ApnsKey find(String teamId, String keyId) {
+    var token = tokens.get(ApnsKey.id(teamId, keyId));
+    return token == null ? null : token.getApnsKey();
+  }
+
+  int size() {
+    return tokens.size();
+  }
+
+  long getRefreshCount() {
+    return tokens.values().stream()
+      .mapToLong(ProviderToken::getRefreshCount)
+      .sum();
+  }
+
+  Duration getRefreshTime() {
+    return tokens.values().stream()
+      .map(ProviderToken::getRefreshTime)
+      .reduce(Duration.ZERO, Duration::plus);
+  }
+
+  /**
+   * Stops refreshing all the tokens.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    tokens.values().forEach(ProviderToken::close);
+  }
+}
@@ -0,0 +1,51 @@
+package digital.soares.apns.messaging;
+
+/**
+ * Defines how many notifications may be sent per second, and how many
+ * may be sent at once after a quiet period.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class RateLimit {
+
+  private final double permitsPerSecond;
+  private final int burst;
+
+  private RateLimit(double permitsPerSecond, int burst) {
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = burst;
+  }
+
+  /**
+   * Creates a rate limit.
+   *
+   * @param permitsPerSecond the sustained rate
+   * @param burst            how many notifications may be sent at once
+   * @return a new {@link RateLimit}
+   * @throws IllegalArgumentException in case the rate or the burst are not positive
+   */
+  public static RateLimit of(double permitsPerSecond, int burst) {
+    if (!(permitsPerSecond > 0) || burst < 1) {
+      throw new IllegalArgumentException("Rate and burst must be positive");
+    }
+
+    return new RateLimit(permitsPerSecond, burst);
+  }
+
+  public double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  /**
+   * Gets the time between two notifications at the sustained rate.
+   *
+   * @return the interval in nanoseconds
+   */
+  long getIntervalNanos() {
+    return Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+  }
+}
@@ -0,0 +1,94 @@
+package digital.soares.apns.messaging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket per key implemented as a generic cell rate algorithm:
+ * each key holds only the theoretical arrival time of its next permit,
+ * updated with a compare-and-set, so acquiring never locks.
+ *
+ * <p>Keys whose bucket is full again are purged periodically, as they
+ * behave exactly like new ones. A caller that raced the purge may lose
+ * its reservation, admitting at most one extra notification.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class RateLimiter implements AutoCloseable {
+
+  static final long REJECTED = -1;
+
+  private static final long PURGE_INTERVAL = 60;
+
+  private final ConcurrentHashMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+  private final long interval;
+  private final long tolerance;
+  private final ScheduledFuture<?> purge;
+
+  RateLimiter(RateLimit rateLimit) {
+    this.interval = rateLimit.getIntervalNanos();
+    this.tolerance = interval * rateLimit.getBurst();
+    this.purge = SharedScheduler.get()
+      .scheduleWithFixedDelay(this::purge, PURGE_INTERVAL, PURGE_INTERVAL, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Reserves a permit for the key.
+   *
+   * @param key            to be limited
+   * @param maxDelayNanos  the longest the caller accepts to wait
+   * @return how long to wait before sending in nanoseconds, or {@link #REJECTED}
+   * if the wait would be longer than {@code maxDelayNanos}
+   */
+  long acquire(String key, long maxDelayNanos) {
+    var arrival = arrivals.get(key);
+    if (arrival == null) {
+      arrival = arrivals.computeIfAbsent(key, ignored -> new AtomicLong(System.nanoTime()));
+    }
+
+    while (true) {
+      var now = System.nanoTime();
+      var current = arrival.get();
+      // nanoTime may overflow, only the difference is meaningful
+      var next = (current - now > 0 ? current : now) + interval;
+      var wait = next - tolerance - now;
+
+      if (wait > maxDelayNanos) {
+        return REJECTED;
+      }
+
+      if (arrival.compareAndSet(current, next)) {
+        return Math.max(0, wait);
+      }
+    }
+  }
+
+  /**
+   * Gives back a permit acquired for the key, for a notification refused
+   * by another limiter, so it doesn't use up the quota of this one.
+   *
+   * @param key the permit was acquired for
+   */
+  void release(String key) {
+    var arrival = arrivals.get(key);
+    if (arrival != null) {
+      arrival.addAndGet(-interval);
+    }
+  }
+
+  int size() {
+    return arrivals.size();
+  }
+
+  @Override
+  public void close() {
+    purge.cancel(false);
+  }
+
+  void purge() {
+    var now = System.nanoTime();
+    arrivals.values().removeIf(arrival -> arrival.get() - now <= 0);
+  }
+}
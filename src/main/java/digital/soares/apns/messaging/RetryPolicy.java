@@ -0,0 +1,199 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how notifications refused for transient reasons are sent again.
+ * Only {@code 429}, {@code 500} and {@code 503} responses and I/O failures
+ * are retried; every other response, like {@code 400} or {@code 410}, can
+ * never succeed and is handed back right away.
+ *
+ * <p>Retries wait an exponential backoff with full jitter, so senders
+ * refused together don't come back together, and give up once the
+ * deadline of the message would be exceeded.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class RetryPolicy {
+
+  private static final RetryPolicy NONE = builder().setMaxAttempts(1).build();
+
+  private final int maxAttempts;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+  private final Duration deadline;
+
+  private RetryPolicy(Builder builder) {
+    if (builder.maxAttempts < 1) {
+      throw new IllegalArgumentException("Max attempts must be positive");
+    }
+
+    Objects.requireNonNull(builder.initialBackoff, "Initial backoff must not be null");
+    Objects.requireNonNull(builder.maxBackoff, "Max backoff must not be null");
+    Objects.requireNonNull(builder.deadline, "Deadline must not be null");
+
+    // the backoff is drawn from [0, max backoff], so its nanos plus one must fit a long
+    if (!fitsNanos(builder.initialBackoff) || !fitsNanos(builder.maxBackoff) || !fitsNanos(builder.deadline)) {
+      throw new IllegalArgumentException("Backoffs and deadline must not be negative nor too long");
+    }
+
+    if (builder.initialBackoff.compareTo(builder.maxBackoff) > 0) {
+      throw new IllegalArgumentException("Initial backoff must not exceed the max backoff");
+    }
+
+    this.maxAttempts = builder.maxAttempts;
+    this.initialBackoff = builder.initialBackoff;
+    this.maxBackoff = builder.maxBackoff;
+    this.deadline = builder.deadline;
+  }
+
+  /**
+   * Gets the policy that never retries.
+   *
+   * @return a {@link RetryPolicy} with a single attempt
+   */
+  public static RetryPolicy none() {
+    return NONE;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public Duration getInitialBackoff() {
+    return initialBackoff;
+  }
+
+  public Duration getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  /**
+   * Gets how long a message may take, counting from its first attempt,
+   * before no more retries are made.
+   *
+   * @return the deadline of each message
+   */
+  public Duration getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Checks whether the outcome of an attempt is worth another one.
+   *
+   * @param response of the attempt, if any
+   * @param failure  of the attempt, if any
+   * @return true if the attempt failed for a transient reason, false otherwise
+   */
+  static boolean isRetryable(ApnsResponse response, Throwable failure) {
+    if (response != null) {
+      var statusCode = response.getStatusCode();
+      return statusCode == 429 || statusCode == 500 || statusCode == 503;
+    }
+
+    var cause = failure instanceof CompletionException && failure.getCause() != null
+      ? failure.getCause() : failure;
+
+    return cause instanceof IOException && !(cause instanceof MessageRejectedException);
+  }
+
+  /**
+   * Computes how long to wait before the given retry, picking a random
+   * value between zero and the exponential backoff of the attempt.
+   *
+   * @param retry the number of the retry, starting at 1
+   * @return the delay in nanoseconds
+   */
+  long backoffNanos(int retry) {
+    var shift = Math.min(retry - 1, 30);
+    var initial = initialBackoff.toNanos();
+    var max = maxBackoff.toNanos();
+
+    // clamped before shifting, a shifted value may overflow into any number
+    var ceiling = initial > max >> shift ? max : initial << shift;
+
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  private static boolean fitsNanos(Duration duration) {
+    return !duration.isNegative() && duration.compareTo(Duration.ofNanos(Long.MAX_VALUE - 1)) <= 0;
+  }
+
+  /**
+   * Creates a new {@link RetryPolicy.Builder}.
+   *
+   * @return A {@link RetryPolicy.Builder} instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private int maxAttempts = 3;
+    private Duration initialBackoff = Duration.ofMillis(100);
+    private Duration maxBackoff = Duration.ofSeconds(10);
+    private Duration deadline = Duration.ofSeconds(60);
+
+    /**
+     * Sets how many times a message is attempted, including the first
+     * one. Defaults to 3.
+     *
+     * @param maxAttempts the maximum number of attempts
+     * @return this builder
+     */
+    public Builder setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Sets the backoff ceiling of the first retry, doubled on every
+     * retry after it. Defaults to 100 milliseconds.
+     *
+     * @param initialBackoff the backoff ceiling of the first retry
+     * @return this builder
+     */
+    public Builder setInitialBackoff(Duration initialBackoff) {
+      this.initialBackoff = initialBackoff;
+      return this;
+    }
+
+    /**
+     * Sets the highest backoff ceiling. Defaults to 10 seconds.
+     *
+     * @param maxBackoff the highest backoff ceiling
+     * @return this builder
+     */
+    public Builder setMaxBackoff(Duration maxBackoff) {
+      this.maxBackoff = maxBackoff;
+      return this;
+    }
+
+    /**
+     * Sets how long a message may take, counting from its first attempt,
+     * before no more retries are made. Defaults to 60 seconds.
+     *
+     * @param deadline the deadline of each message
+     * @return this builder
+     */
+    public Builder setDeadline(Duration deadline) {
+      this.deadline = deadline;
+      return this;
+    }
+
+    /**
+     * Creates a new {@link RetryPolicy} instance.
+     *
+     * @return A new {@link RetryPolicy} instance.
+     * @throws IllegalArgumentException If any of the parameters set on the builder are invalid.
+     */
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
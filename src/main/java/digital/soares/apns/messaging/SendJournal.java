@@ -0,0 +1,806 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the notifications handed to {@link ApnsMessaging},
+ * so the ones whose outcome is unknown when the process dies can be sent
+ * again once it restarts, see {@link ApnsMessaging#replay()}.
+ *
+ * <p>Each notification is written, already encoded, to a memory-mapped
+ * segment file before it is sent, and an acknowledgement is written once
+ * Apple's APNS service answers it or it is refused locally. Writes are
+ * made durable by a single thread that syncs everything written since its
+ * previous sync at once, so concurrent senders share the cost of a sync.
+ * A segment is deleted as soon as all its notifications are acknowledged,
+ * and when there are more segments than allowed, the few notifications
+ * still pending in the oldest one are copied forward so it can be deleted
+ * too. Segments that are mostly pending are kept, whatever their number.
+ *
+ * <p>The tenant key of a notification is journaled by its team id and key
+ * id only, the private key itself is never written.
+ *
+ * <p>Delivery is at least once: a notification sent right before a crash
+ * may be sent again on replay.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class SendJournal implements AutoCloseable {
+
+  private static final byte ENTRY = 1;
+  private static final byte ACK = 2;
+  private static final byte HAS_ID = 1;
+  private static final byte HAS_COLLAPSE_ID = 2;
+  private static final byte HAS_APNS_KEY = 4;
+  private static final byte HAS_TIMEOUT = 8;
+
+  /**
+   * Each record holds its length, type and sequence, then its payload
+   * and finally the CRC32 of everything but the length.
+   */
+  private static final int HEADER_SIZE = 4 + 1 + 8;
+  private static final int CRC_SIZE = 4;
+
+  private static final String SUFFIX = ".journal";
+  private static final Pattern SEGMENT_NAME = Pattern.compile("\\d{10}" + Pattern.quote(SUFFIX));
+
+  private final Path directory;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final Object lock = new Object();
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private final Map<Long, Location> locations = new HashMap<>();
+  private final Set<Segment> dirty = new LinkedHashSet<>();
+  private final Set<Segment> awaitingSync = new LinkedHashSet<>();
+  private final AtomicLong sequences;
+  private final List<Long> recovered;
+  private final Thread syncThread;
+  private List<PendingSync> pendingSyncs = new ArrayList<>();
+  private Segment active;
+  private int nextSegmentId;
+  private boolean compacting;
+  private boolean compactedSinceSync;
+  private boolean closed;
+
+  private SendJournal(Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.segmentSize = builder.segmentSize;
+    this.maxSegments = builder.maxSegments;
+
+    Files.createDirectories(directory);
+
+    var lastSequence = recover();
+    this.sequences = new AtomicLong(lastSequence + 1);
+    this.recovered = List.copyOf(new TreeSet<>(locations.keySet()));
+
+    // never appends to a recovered segment, whose tail may be torn
+    this.active = createSegment();
+    release();
+
+    this.syncThread = new Thread(this::syncLoop, "apns-messaging-journal");
+    this.syncThread.setDaemon(true);
+    this.syncThread.start();
+  }
+
+  /**
+   * Opens the journal kept in {@code directory} with the default settings.
+   *
+   * @param directory holding the segment files, created if missing
+   * @return the opened {@link SendJournal}
+   * @throws IOException in case the segment files can't be read or created
+   */
+  public static SendJournal open(Path directory) throws IOException {
+    return builder()
+      .setDirectory(directory)
+      .build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets how many notifications are not acknowledged yet.
+   *
+   * @return the number of pending notifications
+   */
+  public int getPendingCount() {
+    synchronized (lock) {
+      return locations.size();
+    }
+  }
+
+  /**
+   * Gets how many segment files the journal currently uses.
+   *
+   * @return the number of segments
+   */
+  public int getSegmentCount() {
+    synchronized (lock) {
+      return segments.size();
+    }
+  }
+
+  /**
+   * Writes a notification to the journal.
+   *
+   * @param message to be sent
+   * @param body    the serialized payload
+   * @return a {@link CompletableFuture} completed with the sequence of the
+   * notification once it is durable
+   */
+  CompletableFuture<Long> append(ApnsMessage message, byte[] body) {
+    var sequence = sequences.getAndIncrement();
+    var record = entry(sequence, message, body);
+    var future = new CompletableFuture<Long>();
+
+    synchronized (lock) {
+      if (closed) {
+        return CompletableFuture.failedFuture(new IOException("Journal is closed"));
+      }
+
+      try {
+        var location = write(record);
+        location.segment.pending++;
+        location.segment.entries++;
+        locations.put(sequence, location);
+      } catch (IOException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+
+      pendingSyncs.add(new PendingSync(sequence, future));
+      if (pendingSyncs.size() == 1) {
+        lock.notifyAll();
+      }
+    }
+
+    return future;
+  }
+
+  /**
+   * Marks a notification as done, so it is not replayed. The
+   * acknowledgement is made durable along with the next sync.
+   *
+   * @param sequence of the notification
+   */
+  void acknowledge(long sequence) {
+    var record = record(ACK, sequence, 0).array();
+
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+
+      var location = locations.remove(sequence);
+      if (location == null) {
+        return;
+      }
+
+      try {
+        write(record);
+      } catch (IOException e) {
+        // the notification is replayed once more at the next start
+      }
+
+      location.segment.pending--;
+      release();
+    }
+  }
+
+  /**
+   * Gets the sequences of the notifications found pending when the
+   * journal was opened, in the order they were written.
+   *
+   * @return the recovered sequences
+   */
+  List<Long> getRecovered() {
+    return recovered;
+  }
+
+  /**
+   * Reads a pending notification.
+   *
+   * @param sequence of the notification
+   * @return the {@link Entry}, or {@code null} if it was already acknowledged
+   */
+  Entry read(long sequence) {
+    byte[] record;
+
+    synchronized (lock) {
+      var location = locations.get(sequence);
+      if (location == null) {
+        return null;
+      }
+
+      record = location.read();
+    }
+
+    return decode(record);
+  }
+
+  /**
+   * Syncs and closes the segment files. Notifications written but not
+   * acknowledged yet are replayed at the next start.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+
+      closed = true;
+      lock.notifyAll();
+    }
+
+    try {
+      syncThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (lock) {
+      for (var segment : segments) {
+        segment.buffer.force();
+      }
+
+      awaitingSync.clear();
+      release();
+
+      for (var segment : segments) {
+        segment.close();
+      }
+    }
+  }
+
+  /**
+   * Syncs in groups: everything written while a sync is running is made
+   * durable by the next one. Segments emptied by a compaction are deleted
+   * once the copies of their notifications are synced.
+   */
+  private void syncLoop() {
+    while (true) {
+      List<PendingSync> batch;
+      List<Segment> buffers;
+      List<Segment> compacted;
+
+      synchronized (lock) {
+        while (pendingSyncs.isEmpty() && !compactedSinceSync && !closed) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+
+        if (pendingSyncs.isEmpty() && !compactedSinceSync) {
+          return;
+        }
+
+        batch = pendingSyncs;
+        pendingSyncs = new ArrayList<>();
+        buffers = new ArrayList<>(dirty);
+        dirty.clear();
+        compacted = new ArrayList<>(awaitingSync);
+        compactedSinceSync = false;
+      }
+
+      try {
+        for (var segment : buffers) {
+          segment.buffer.force();
+        }
+
+        synchronized (lock) {
+          awaitingSync.removeAll(compacted);
+          release();
+        }
+
+        for (var pendingSync : batch) {
+          pendingSync.future.complete(pendingSync.sequence);
+        }
+      } catch (RuntimeException e) {
+        var failure = new IOException("Journal sync failed", e);
+
+        for (var pendingSync : batch) {
+          pendingSync.future.completeExceptionally(failure);
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies a record to the active segment, rolling over to a new one when
+   * it doesn't fit. Must hold the lock.
+   */
+  private Location write(byte[] record) throws IOException {
+    if (record.length > segmentSize) {
+      throw new IOException("Notification of " + record.length + " bytes exceeds the segment size");
+    }
+
+    if (active.buffer.remaining() < record.length) {
+      active = createSegment();
+      compact();
+    }
+
+    var offset = active.buffer.position();
+    active.buffer.put(record);
+    dirty.add(active);
+
+    return new Location(active, offset, record.length);
+  }
+
+  /**
+   * Copies the notifications still pending in the oldest segments to the
+   * active one, until the number of segments is within the limit or the
+   * oldest segment is mostly pending, as copying it would only move the
+   * problem forward. The old segments are deleted by the sync thread once
+   * the copies are synced, so appends don't wait for it. Must hold the lock.
+   */
+  private void compact() throws IOException {
+    if (compacting) {
+      return;
+    }
+
+    compacting = true;
+    try {
+      while (segments.size() - awaitingSync.size() > maxSegments) {
+        Segment oldest = null;
+        for (var segment : segments) {
+          if (!awaitingSync.contains(segment)) {
+            oldest = segment;
+            break;
+          }
+        }
+
+        if (oldest == active || oldest.pending * 4 > oldest.entries) {
+          break;
+        }
+
+        for (var entry : locations.entrySet()) {
+          var location = entry.getValue();
+
+          if (location.segment == oldest) {
+            var copy = write(location.read());
+            copy.segment.pending++;
+            copy.segment.entries++;
+            oldest.pending--;
+            entry.setValue(copy);
+          }
+        }
+
+        awaitingSync.add(oldest);
+        compactedSinceSync = true;
+        lock.notifyAll();
+      }
+    } finally {
+      compacting = false;
+    }
+  }
+
+  /**
+   * Deletes the oldest segments once all their notifications are
+   * acknowledged, or copied and synced. Segments are deleted in order, so
+   * no acknowledgement outlives the notification it refers to. Must hold
+   * the lock.
+   */
+  private void release() {
+    while (segments.peekFirst() != active && segments.peekFirst().pending == 0
+      && !awaitingSync.contains(segments.peekFirst())) {
+      var segment = segments.pollFirst();
+      dirty.remove(segment);
+      segment.close();
+
+      try {
+        Files.deleteIfExists(segment.path);
+      } catch (IOException e) {
+        // an empty segment is deleted again at the next start
+      }
+    }
+  }
+
+  private Segment createSegment() throws IOException {
+    var path = directory.resolve(String.format("%010d", nextSegmentId++) + SUFFIX);
+    var segment = Segment.open(path, segmentSize);
+
+    segments.addLast(segment);
+    return segment;
+  }
+
+  /**
+   * Scans the existing segments in order, keeping the notifications that
+   * were never acknowledged. A segment ends at its first record that is
+   * incomplete or corrupted, left behind by a crash in the middle of a write.
+   *
+   * @return the highest sequence found
+   */
+  private long recover() throws IOException {
+    List<Path> paths;
+    try (var files = Files.list(directory)) {
+      paths = files
+        .filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+        .sorted()
+        .collect(Collectors.toList());
+    }
+
+    var lastSequence = -1L;
+    var crc = new CRC32();
+
+    for (var path : paths) {
+      var segment = Segment.open(path, 0);
+      var buffer = segment.buffer;
+      var position = 0;
+
+      segments.addLast(segment);
+      nextSegmentId = Integer.parseInt(path.getFileName().toString().substring(0, 10)) + 1;
+
+      while (position + HEADER_SIZE + CRC_SIZE <= buffer.capacity()) {
+        var length = buffer.getInt(position);
+
+        if (length < HEADER_SIZE - 4 || length > buffer.capacity() - position - 4 - CRC_SIZE) {
+          break;
+        }
+
+        crc.reset();
+        crc.update(buffer.duplicate().position(position + 4).limit(position + 4 + length));
+
+        if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+          break;
+        }
+
+        var type = buffer.get(position + 4);
+        var sequence = buffer.getLong(position + 5);
+        var recordLength = 4 + length + CRC_SIZE;
+
+        if (type == ENTRY) {
+          var previous = locations.put(sequence, new Location(segment, position, recordLength));
+          if (previous != null) {
+            previous.segment.pending--;
+          }
+
+          segment.pending++;
+          segment.entries++;
+        } else if (type == ACK) {
+          var location = locations.remove(sequence);
+          if (location != null) {
+            location.segment.pending--;
+          }
+        }
+
+        lastSequence = Math.max(lastSequence, sequence);
+        position += recordLength;
+      }
+    }
+
+    return lastSequence;
+  }
+
+  private static byte[] entry(long sequence, ApnsMessage message, byte[] body) {
+    var token = message.getToken().getBytes(StandardCharsets.UTF_8);
+    var topic = message.getTopic().getBytes(StandardCharsets.UTF_8);
+    var collapseId = message.getCollapseId() == null
+      ? null : message.getCollapseId().getBytes(StandardCharsets.UTF_8);
+    var id = message.getId();
+    var apnsKey = message.getApnsKey();
+    var teamId = apnsKey == null ? null : apnsKey.getTeamId().getBytes(StandardCharsets.UTF_8);
+    var keyId = apnsKey == null ? null : apnsKey.getKeyId().getBytes(StandardCharsets.UTF_8);
+    var timeout = message.getTimeout();
+
+    var payloadLength = 2 + token.length + 2 + topic.length + 1 + 1
+      + (id == null ? 0 : 16)
+      + (collapseId == null ? 0 : 2 + collapseId.length)
+      + (apnsKey == null ? 0 : 2 + teamId.length + 2 + keyId.length)
+      + (timeout == null ? 0 : 8)
+      + 8 + 4 + body.length;
+
+    var buffer = record(ENTRY, sequence, payloadLength);
+    putString(buffer, token);
+    putString(buffer, topic);
+    buffer.put((byte) message.getPriority().ordinal());
+    buffer.put((byte) ((id == null ? 0 : HAS_ID)
+      | (collapseId == null ? 0 : HAS_COLLAPSE_ID)
+      | (apnsKey == null ? 0 : HAS_APNS_KEY)
+      | (timeout == null ? 0 : HAS_TIMEOUT)));
+
+    if (id != null) {
+      buffer.putLong(id.getMostSignificantBits());
+      buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    if (collapseId != null) {
+      putString(buffer, collapseId);
+    }
+
+    if (apnsKey != null) {
+      putString(buffer, teamId);
+      putString(buffer, keyId);
+    }
+
+    if (timeout != null) {
+      buffer.putLong(timeout.toNanos());
+    }
+
+    buffer.putLong(message.getExpiration());
+    buffer.putInt(body.length);
+    buffer.put(body);
+
+    return seal(buffer);
+  }
+
+  /**
+   * Allocates a record and writes its header. ACK records have no
+   * payload and are sealed right away.
+   */
+  private static ByteBuffer record(byte type, long sequence, int payloadLength) {
+    var length = HEADER_SIZE - 4 + payloadLength;
+    var buffer = ByteBuffer.allocate(4 + length + CRC_SIZE)
+      .putInt(length)
+      .put(type)
+      .putLong(sequence);
+
+    if (payloadLength == 0) {
+      seal(buffer);
+    }
+
+    return buffer;
+  }
+
+  private static byte[] seal(ByteBuffer buffer) {
+    var crc = new CRC32();
+    crc.update(buffer.array(), 4, buffer.position() - 4);
+    buffer.putInt((int) crc.getValue());
+    return buffer.array();
+  }
+
+  private static Entry decode(byte[] record) {
+    var buffer = ByteBuffer.wrap(record);
+    buffer.position(5);
+
+    var sequence = buffer.getLong();
+    var builder = ApnsMessage.builder()
+      .setToken(getString(buffer))
+      .setTopic(getString(buffer))
+      .setPriority(ApnsMessage.Priority.values()[buffer.get()]);
+
+    var flags = buffer.get();
+    if ((flags & HAS_ID) != 0) {
+      builder.setId(new UUID(buffer.getLong(), buffer.getLong()));
+    }
+
+    if ((flags & HAS_COLLAPSE_ID) != 0) {
+      builder.setCollapseId(getString(buffer));
+    }
+
+    String teamId = null;
+    String keyId = null;
+    if ((flags & HAS_APNS_KEY) != 0) {
+      teamId = getString(buffer);
+      keyId = getString(buffer);
+    }
+
+    if ((flags & HAS_TIMEOUT) != 0) {
+      builder.setTimeout(Duration.ofNanos(buffer.getLong()));
+    }
+
+    builder.setExpiration((int) buffer.getLong());
+
+    var body = new byte[buffer.getInt()];
+    buffer.get(body);
+
+    return new Entry(sequence, builder.build(), body, teamId, keyId);
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] value) {
+    if (value.length > 0xFFFF) {
+      throw new IllegalArgumentException("Header of " + value.length + " bytes is too long");
+    }
+
+    buffer.putShort((short) value.length);
+    buffer.put(value);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    var value = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(value);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A notification read back from the journal. Its message carries the
+   * headers only, the payload is kept encoded in the body. Messages sent
+   * on behalf of a tenant come back without their key, which has to be
+   * found again from its team id and key id.
+   */
+  static class Entry {
+
+    private final long sequence;
+    private final ApnsMessage message;
+    private final byte[] body;
+    private final String teamId;
+    private final String keyId;
+
+    private Entry(long sequence, ApnsMessage message, byte[] body, String teamId, String keyId) {
+      this.sequence = sequence;
+      this.message = message;
+      this.body = body;
+      this.teamId = teamId;
+      this.keyId = keyId;
+    }
+
+    long getSequence() {
+      return sequence;
+    }
+
+    ApnsMessage getMessage() {
+      return message;
+    }
+
+    byte[] getBody() {
+      return body;
+    }
+
+    /**
+     * Gets the team id of the tenant key.
+     *
+     * @return the team id, or null if the message had no tenant key
+     */
+    String getTeamId() {
+      return teamId;
+    }
+
+    /**
+     * Gets the key id of the tenant key.
+     *
+     * @return the key id, or null if the message had no tenant key
+     */
+    String getKeyId() {
+      return keyId;
+    }
+  }
+
+  private static class Segment {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int pending;
+    private int entries;
+
+    private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+      this.path = path;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    /**
+     * Maps a segment file, growing it to {@code size} bytes.
+     */
+    private static Segment open(Path path, int size) throws IOException {
+      var channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+      try {
+        var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        return new Segment(path, channel, buffer);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    private void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // the mapping stays valid until it is garbage collected
+      }
+    }
+  }
+
+  private static class Location {
+
+    private final Segment segment;
+    private final int offset;
+    private final int length;
+
+    private Location(Segment segment, int offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private byte[] read() {
+      var record = new byte[length];
+      segment.buffer.duplicate().position(offset).get(record);
+      return record;
+    }
+  }
+
+  private static class PendingSync {
+
+    private final long sequence;
+    private final CompletableFuture<Long> future;
+
+    private PendingSync(long sequence, CompletableFuture<Long> future) {
+      this.sequence = sequence;
+      this.future = future;
+    }
+  }
+
+  public static class Builder {
+
+    private Path directory;
+    private int segmentSize = 32 * 1024 * 1024;
+    private int maxSegments = 8;
+
+    public Builder setDirectory(Path directory) {
+      this.directory = directory;
+      return this;
+    }
+
+    /**
+     * Sets the size of each segment file. A notification must fit in a
+     * segment. Defaults to 32 MB.
+     *
+     * @param segmentSize the segment size in bytes
+     * @return this builder
+     */
+    public Builder setSegmentSize(int segmentSize) {
+      this.segmentSize = segmentSize;
+      return this;
+    }
+
+    /**
+     * Sets how many segments are kept before the pending notifications
+     * of the oldest ones are compacted. Defaults to 8.
+     *
+     * @param maxSegments the number of segments
+     * @return this builder
+     */
+    public Builder setMaxSegments(int maxSegments) {
+      this.maxSegments = maxSegments;
+      return this;
+    }
+
+    /**
+     * Opens the journal, recovering the notifications left pending.
+     *
+     * @return the opened {@link SendJournal}
+     * @throws NullPointerException     If the directory is null.
+     * @throws IllegalArgumentException If the segment size or the number of segments are too small.
+     * @throws IOException              If the segment files can't be read or created.
+     */
+    public SendJournal build() throws IOException {
+      Objects.requireNonNull(directory, "Directory must not be null");
+
+      if (segmentSize < 4096 || maxSegments < 2) {
+        throw new IllegalArgumentException("Segments must hold at least 4096 bytes and be at least 2");
+      }
+
+      return new SendJournal(this);
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package digital.soares.apns.messaging;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Sends the messages it receives from upstream and publishes their
+ * outcomes downstream, in completion order. Messages are requested from
+ * upstream only while fewer than a fixed number of them are in flight or
+ * waiting for downstream demand, so a slow network or a slow subscriber
+ * slows the producer down rather than piling up messages.
+ *
+ * <p>With per-device ordering, messages to the same device are sent one
+ * at a time, in the order they were received.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class SendProcessor implements Flow.Processor<ApnsMessage, SendResult> {
+
+  private final Function<ApnsMessage, CompletableFuture<ApnsResponse>> sender;
+  private final int limit;
+  private final int batch;
+  private final Map<String, Queue<ApnsMessage>> devices;
+  private final Queue<SendResult> results = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger wip = new AtomicInteger();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicReference<Flow.Subscriber<? super SendResult>> downstream = new AtomicReference<>();
+  private volatile Flow.Subscription upstream;
+  private volatile boolean upstreamDone;
+  private volatile Throwable upstreamFailure;
+  private volatile Throwable requestFailure;
+  private volatile boolean cancelled;
+  private boolean terminated;
+  private int outstanding;
+
+  SendProcessor(Function<ApnsMessage, CompletableFuture<ApnsResponse>> sender, int limit,
+                boolean orderedPerDevice) {
+    this.sender = sender;
+    this.limit = limit;
+    this.batch = Math.max(1, limit / 4);
+    this.devices = orderedPerDevice ? new HashMap<>() : null;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super SendResult> subscriber) {
+    Objects.requireNonNull(subscriber, "Subscriber must not be null");
+
+    if (!downstream.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("Processor allows a single subscriber"));
+      return;
+    }
+
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        if (n <= 0) {
+          requestFailure = new IllegalArgumentException("Requested items must be positive");
+          cancelUpstream();
+        } else {
+          demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        }
+
+        drain();
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+      }
+    });
+
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription, "Subscription must not be null");
+
+    if (upstream != null || cancelled) {
+      subscription.cancel();
+      return;
+    }
+
+    upstream = subscription;
+    drain();
+  }
+
+  @Override
+  public void onNext(ApnsMessage message) {
+    Objects.requireNonNull(message, "Message must not be null");
+
+    if (cancelled) {
+      return;
+    }
+
+    pending.incrementAndGet();
+
+    if (devices != null) {
+      synchronized (devices) {
+        var queue = devices.get(message.getToken());
+
+        if (queue != null) {
+          queue.add(message);
+          return;
+        }
+
+        devices.put(message.getToken(), new ArrayDeque<>());
+      }
+    }
+
+    send(message);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable, "Throwable must not be null");
+
+    upstreamFailure = throwable;
+    upstreamDone = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    drain();
+  }
+
+  private void send(ApnsMessage message) {
+    CompletableFuture<ApnsResponse> future;
+
+    try {
+      future = sender.apply(message);
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    future.whenComplete((response, failure) -> {
+      var cause = failure instanceof CompletionException && failure.getCause() != null
+        ? failure.getCause() : failure;
+
+      results.add(new SendResult(message, response, cause));
+
+      if (devices != null) {
+        sendNext(message.getToken());
+      }
+
+      drain();
+    });
+  }
+
+  /**
+   * Sends the next message queued for a device, if any.
+   */
+  private void sendNext(String token) {
+    ApnsMessage next;
+
+    synchronized (devices) {
+      var queue = devices.get(token);
+      next = queue.poll();
+
+      if (next == null) {
+        devices.remove(token);
+        return;
+      }
+    }
+
+    send(next);
+  }
+
+  private void cancelUpstream() {
+    var subscription = upstream;
+
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  /**
+   * Publishes the available results as demand allows and requests more
+   * messages as slots free up. Only one thread drains at a time; calls
+   * made meanwhile make the draining thread loop again.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      var subscriber = downstream.get();
+
+      if (subscriber != null && !terminated) {
+        if (requestFailure != null) {
+          terminated = true;
+          cancelled = true;
+          subscriber.onError(requestFailure);
+        } else if (cancelled) {
+          results.clear();
+          terminated = true;
+        } else {
+          emit(subscriber);
+        }
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  private void emit(Flow.Subscriber<? super SendResult> subscriber) {
+    while (demand.get() > 0 && !results.isEmpty() && !cancelled) {
+      var result = results.poll();
+
+      demand.decrementAndGet();
+      pending.decrementAndGet();
+      outstanding--;
+      subscriber.onNext(result);
+    }
+
+    if (upstreamDone && pending.get() == 0) {
+      terminated = true;
+
+      if (upstreamFailure != null) {
+        subscriber.onError(upstreamFailure);
+      } else {
+        subscriber.onComplete();
+      }
+
+      return;
+    }
+
+    var subscription = upstream;
+    var free = limit - outstanding;
+
+    if (subscription != null && !upstreamDone && !cancelled && (free >= batch || outstanding == 0)) {
+      outstanding += free;
+      subscription.request(free);
+    }
+  }
+}
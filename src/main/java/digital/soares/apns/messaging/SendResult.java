@@ -0,0 +1,46 @@
+package digital.soares.apns.messaging;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Represents the outcome of a single message sent as part of a bulk
+ * send. Either the response sent back by Apple's APNS service or the
+ * failure that prevented the message from getting one is present.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class SendResult {
+
+  private final ApnsMessage message;
+  private final ApnsResponse response;
+  private final Throwable failure;
+
+  SendResult(ApnsMessage message, ApnsResponse response, Throwable failure) {
+    this.message = message;
+    this.response = response;
+    this.failure = failure;
+  }
+
+  public ApnsMessage getMessage() {
+    return message;
+  }
+
+  @Nullable
+  public ApnsResponse getResponse() {
+    return response;
+  }
+
+  @Nullable
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  /**
+   * Checks whether the message was accepted by Apple's APNS service.
+   *
+   * @return true if a 200 response was received, false otherwise
+   */
+  public boolean isSuccessful() {
+    return response != null && response.isSuccessful();
+  }
+}
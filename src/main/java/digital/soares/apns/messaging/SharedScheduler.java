@@ -0,0 +1,44 @@
+package digital.soares.apns.messaging;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the single daemon timer shared by every {@link ApnsMessaging}
+ * instance to run its background tasks, so no task ever owns a thread.
+ * Tasks scheduled on it must be short and must never block.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+final class SharedScheduler {
+
+  private SharedScheduler() {
+  }
+
+  /**
+   * Gets the shared scheduler, creating it on first use.
+   *
+   * @return the shared {@link ScheduledExecutorService}
+   */
+  static ScheduledExecutorService get() {
+    return Holder.INSTANCE;
+  }
+
+  private static class Holder {
+
+    private static final ScheduledExecutorService INSTANCE = create();
+
+    private static ScheduledExecutorService create() {
+      var counter = new AtomicInteger();
+      var executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        var thread = new Thread(runnable, "apns-messaging-scheduler-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
+    }
+  }
+}
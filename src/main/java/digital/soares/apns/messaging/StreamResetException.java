@@ -0,0 +1,23 @@
+package digital.soares.apns.messaging;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link Transport} when a single stream is reset or refused,
+ * like by a {@code REFUSED_STREAM}, while its connection stays usable.
+ * The request may be sent again on the same connection.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class StreamResetException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public StreamResetException(String message) {
+    super(message);
+  }
+
+  public StreamResetException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
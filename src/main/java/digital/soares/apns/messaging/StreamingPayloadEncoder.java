@@ -0,0 +1,275 @@
+package digital.soares.apns.messaging;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes payloads by hand, writing UTF-8 straight into a buffer reused
+ * by each thread. The only allocation per message is the exact-sized copy
+ * handed to the request.
+ *
+ * <p>The output matches {@link JacksonPayloadEncoder} byte for byte: the
+ * same field names and order, empty strings and lists left out, the same
+ * escaping, and characters outside the basic plane written as 4-byte
+ * UTF-8 sequences. Lone surrogates, which have no UTF-8 form, are
+ * replaced with {@code '?'}, like Jackson does.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+final class StreamingPayloadEncoder implements PayloadEncoder {
+
+  static final StreamingPayloadEncoder INSTANCE = new StreamingPayloadEncoder();
+
+  /**
+   * APNS payloads are limited to 4KB, or 5KB for VoIP notifications.
+   */
+  private static final int INITIAL_CAPACITY = 4096;
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+  private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+
+  private StreamingPayloadEncoder() {
+  }
+
+  @Override
+  public byte[] encode(ApnsMessage message) {
+    var output = OUTPUT.get();
+    output.reset();
+
+    writeMessage(output, message);
+    return output.toByteArray();
+  }
+
+  private static void writeMessage(Output output, ApnsMessage message) {
+    var first = true;
+    output.write('{');
+
+    if (message.getAps() != null) {
+      output.writeFieldName("aps", true);
+      writeAps(output, message.getAps());
+      first = false;
+    }
+
+    for (Map.Entry<String, String> entry : message.getData().entrySet()) {
+      if (!isEmpty(entry.getValue())) {
+        output.writeFieldName(entry.getKey(), first);
+        output.writeString(entry.getValue());
+        first = false;
+      }
+    }
+
+    output.write('}');
+  }
+
+  private static void writeAps(Output output, Aps aps) {
+    output.write('{');
+    output.writeFieldName("alert", true);
+    writeAlert(output, aps.getAlert());
+
+    writeField(output, "badge", aps.getBadge(), false);
+    writeField(output, "sound", aps.getSound(), false);
+    writeField(output, "contentAvailable", aps.getContentAvailable(), false);
+    writeField(output, "category", aps.getCategory(), false);
+    writeField(output, "threadId", aps.getThreadId(), false);
+    output.write('}');
+  }
+
+  private static void writeAlert(Output output, Alert alert) {
+    var first = true;
+    output.write('{');
+
+    first &= !writeField(output, "title", alert.getTitle(), first);
+    first &= !writeField(output, "body", alert.getBody(), first);
+    first &= !writeField(output, "titleLocKey", alert.getTitleLocKey(), first);
+    first &= !writeField(output, "titleLocArgs", alert.getTitleLocArgs(), first);
+    first &= !writeField(output, "actionLocKey", alert.getActionLocKey(), first);
+    first &= !writeField(output, "locKey", alert.getLocKey(), first);
+    first &= !writeField(output, "locArgs", alert.getLocArgs(), first);
+    writeField(output, "launchImage", alert.getLaunchImage(), first);
+    output.write('}');
+  }
+
+  private static boolean writeField(Output output, String name, String value, boolean first) {
+    if (isEmpty(value)) {
+      return false;
+    }
+
+    output.writeFieldName(name, first);
+    output.writeString(value);
+    return true;
+  }
+
+  private static boolean writeField(Output output, String name, Integer value, boolean first) {
+    if (value == null) {
+      return false;
+    }
+
+    output.writeFieldName(name, first);
+    output.writeAscii(Integer.toString(value));
+    return true;
+  }
+
+  private static boolean writeField(Output output, String name, List<String> values, boolean first) {
+    if (values.isEmpty()) {
+      return false;
+    }
+
+    output.writeFieldName(name, first);
+    output.write('[');
+
+    for (var i = 0; i < values.size(); i++) {
+      if (i > 0) {
+        output.write(',');
+      }
+
+      output.writeString(values.get(i));
+    }
+
+    output.write(']');
+    return true;
+  }
+
+  private static boolean isEmpty(String value) {
+    return value == null || value.isEmpty();
+  }
+
+  /**
+   * A growable byte buffer writing JSON tokens as UTF-8.
+   */
+  private static class Output {
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position;
+
+    void reset() {
+      if (buffer.length > MAX_RETAINED_CAPACITY) {
+        buffer = new byte[INITIAL_CAPACITY];
+      }
+
+      position = 0;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    void write(char c) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) c;
+    }
+
+    void writeAscii(String value) {
+      var length = value.length();
+      ensureCapacity(length);
+
+      for (var i = 0; i < length; i++) {
+        buffer[position++] = (byte) value.charAt(i);
+      }
+    }
+
+    void writeFieldName(String name, boolean first) {
+      if (!first) {
+        write(',');
+      }
+
+      writeString(name);
+      write(':');
+    }
+
+    void writeString(String value) {
+      var length = value.length();
+      // Worst case is every char escaped as \\uXXXX
+      ensureCapacity(length * 6 + 2);
+
+      var bytes = buffer;
+      var pos = position;
+      bytes[pos++] = '"';
+
+      for (var i = 0; i < length; i++) {
+        var c = value.charAt(i);
+
+        if (c < 0x80) {
+          if (c >= 0x20 && c != '"' && c != '\\') {
+            bytes[pos++] = (byte) c;
+          } else {
+            pos = writeEscaped(bytes, pos, c);
+          }
+        } else if (c < 0x800) {
+          bytes[pos++] = (byte) (0xC0 | (c >> 6));
+          bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+            var codePoint = Character.toCodePoint(c, value.charAt(++i));
+            bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+          } else {
+            // no UTF-8 form, replaced like Jackson and String.getBytes do
+            bytes[pos++] = '?';
+          }
+        } else {
+          bytes[pos++] = (byte) (0xE0 | (c >> 12));
+          bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+
+      bytes[pos++] = '"';
+      position = pos;
+    }
+
+    private static int writeEscaped(byte[] bytes, int pos, char c) {
+      char escape;
+
+      switch (c) {
+        case '"':
+          escape = '"';
+          break;
+        case '\\':
+          escape = '\\';
+          break;
+        case '\b':
+          escape = 'b';
+          break;
+        case '\t':
+          escape = 't';
+          break;
+        case '\n':
+          escape = 'n';
+          break;
+        case '\f':
+          escape = 'f';
+          break;
+        case '\r':
+          escape = 'r';
+          break;
+        default:
+          return writeUnicodeEscape(bytes, pos, c);
+      }
+
+      bytes[pos++] = '\\';
+      bytes[pos++] = (byte) escape;
+      return pos;
+    }
+
+    private static int writeUnicodeEscape(byte[] bytes, int pos, char c) {
+      bytes[pos++] = '\\';
+      bytes[pos++] = 'u';
+      bytes[pos++] = HEX[(c >> 12) & 0xF];
+      bytes[pos++] = HEX[(c >> 8) & 0xF];
+      bytes[pos++] = HEX[(c >> 4) & 0xF];
+      bytes[pos++] = HEX[c & 0xF];
+      return pos;
+    }
+
+    private void ensureCapacity(int extra) {
+      var required = position + extra;
+      if (required > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+      }
+    }
+  }
+}
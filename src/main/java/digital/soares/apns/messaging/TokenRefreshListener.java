@@ -0,0 +1,21 @@
+package digital.soares.apns.messaging;
+
+import java.time.Duration;
+
+/**
+ * Gets notified every time the provider token used to authenticate
+ * against Apple's APNS service is refreshed.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@FunctionalInterface
+public interface TokenRefreshListener {
+
+  /**
+   * Called right after a new token is generated.
+   *
+   * @param refreshCount how many refreshes happened so far, including this one
+   * @param elapsed      how long it took to generate the new token
+   */
+  void onRefresh(long refreshCount, Duration elapsed);
+}
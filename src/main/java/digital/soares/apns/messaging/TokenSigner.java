@@ -0,0 +1,44 @@
+package digital.soares.apns.messaging;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Signs the JWT provider token used to authenticate against Apple's
+ * APNS service.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ * @see <a href="https://developer.apple.com/documentation/usernotifications/setting_up_a_remote_notification_server/establishing_a_token-based_connection_to_apns">Token-Based Connection to APNs</a>
+ */
+public interface TokenSigner {
+
+  /**
+   * Creates a signed provider token.
+   *
+   * @param apnsKey  to sign the token with
+   * @param issuedAt the issue time, in seconds since the epoch
+   * @return the compact serialized JWT
+   * @throws GeneralSecurityException in case the token can't be signed
+   */
+  String sign(ApnsKey apnsKey, long issuedAt) throws GeneralSecurityException;
+
+  /**
+   * Gets the signer backed by JJWT. This is the default signer.
+   *
+   * @return the JJWT {@link TokenSigner}
+   */
+  static TokenSigner jjwt() {
+    return JjwtTokenSigner.INSTANCE;
+  }
+
+  /**
+   * Gets the signer relying on {@code java.security.Signature} only. The
+   * header and the claims are written from fixed templates, so neither
+   * JJWT nor a JSON library is loaded, which shortens the cold start of
+   * short-lived senders.
+   *
+   * @return the built-in {@link TokenSigner}
+   */
+  static TokenSigner builtIn() {
+    return Es256TokenSigner.INSTANCE;
+  }
+}
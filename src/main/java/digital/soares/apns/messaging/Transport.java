@@ -0,0 +1,65 @@
+package digital.soares.apns.messaging;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Carries the requests of {@link ApnsMessaging} to Apple's APNS service
+ * over HTTP/2. The pooling, scheduling, retries and everything else above
+ * the wire stay in {@link ApnsMessaging}; a transport only opens channels,
+ * one per pooled connection, and exchanges requests and responses on them.
+ *
+ * <p>A request that times out must fail with an {@link HttpTimeoutException},
+ * it's then taken as a slow stream of a healthy connection, and a stream
+ * reset alone with a {@link StreamResetException}. Any other
+ * {@link java.io.IOException} means the connection can't be trusted
+ * anymore: its channel is closed and replaced by a fresh one.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public interface Transport {
+
+  /**
+   * Gets the transport built on {@link java.net.http.HttpClient}, used by default.
+   *
+   * @return the JDK transport
+   */
+  static Transport jdk() {
+    return JdkTransport.INSTANCE;
+  }
+
+  /**
+   * Opens a channel holding a single HTTP/2 connection. The connection
+   * itself may be opened lazily, on the first request.
+   *
+   * @param sslContext to secure the connection, or null for the default one
+   * @param executor   for the transport to run its tasks on, or null for its own
+   * @return a new {@link Channel}
+   */
+  Channel open(@Nullable SSLContext sslContext, @Nullable Executor executor);
+
+  /**
+   * A single HTTP/2 connection to Apple's APNS service, carrying many
+   * requests at once.
+   */
+  interface Channel {
+
+    /**
+     * Sends a request on a stream of the connection.
+     *
+     * @param request to be sent
+     * @return a {@link CompletableFuture} completed with the response
+     */
+    CompletableFuture<ApnsResponse> send(ApnsRequest request);
+
+    /**
+     * Closes the connection. Requests still in flight may fail.
+     */
+    default void close() {
+    }
+  }
+}
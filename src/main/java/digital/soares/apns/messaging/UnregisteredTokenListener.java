@@ -0,0 +1,22 @@
+package digital.soares.apns.messaging;
+
+import java.time.Instant;
+
+/**
+ * Gets notified every time a device token is found to be no longer valid,
+ * so the invalidation can be synced back to the device token store.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@FunctionalInterface
+public interface UnregisteredTokenListener {
+
+  /**
+   * Called when a device token is recorded as unregistered, or when
+   * a later invalidation timestamp is recorded for it.
+   *
+   * @param token     of the device
+   * @param timestamp the last time Apple's APNS service confirmed the token was valid
+   */
+  void onUnregistered(String token, Instant timestamp);
+}
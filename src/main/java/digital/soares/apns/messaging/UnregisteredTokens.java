@@ -0,0 +1,242 @@
+package digital.soares.apns.messaging;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps in memory the device tokens Apple's APNS service reported as
+ * unregistered, so {@link ApnsMessaging} refuses notifications to them
+ * locally instead of making a round trip that can only fail.
+ *
+ * <p>Tokens are kept as raw bytes, half the size of their hexadecimal
+ * form, along with the time Apple last confirmed them as valid. An
+ * optional Bloom filter answers most lookups of live tokens without
+ * touching the map.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ * @see <a href="https://developer.apple.com/documentation/usernotifications/setting_up_a_remote_notification_server/handling_notification_responses_from_apns">Handling Notification Responses from APNs</a>
+ */
+public class UnregisteredTokens {
+
+  private static final System.Logger LOGGER = System.getLogger(UnregisteredTokens.class.getName());
+
+  private final ConcurrentHashMap<TokenKey, Long> timestamps;
+  private final BloomFilter bloomFilter;
+  private final UnregisteredTokenListener listener;
+
+  private UnregisteredTokens(Builder builder) {
+    this.timestamps = new ConcurrentHashMap<>(builder.expectedTokens);
+    this.bloomFilter = builder.bloomFilter ? new BloomFilter(builder.expectedTokens) : null;
+    this.listener = builder.listener;
+  }
+
+  /**
+   * Checks whether the device token is known to be unregistered.
+   *
+   * @param token of the device
+   * @return true if the token is unregistered, false otherwise
+   */
+  public boolean isUnregistered(String token) {
+    return getTimestamp(token) != null;
+  }
+
+  /**
+   * Gets the last time Apple's APNS service confirmed the token was valid.
+   *
+   * @param token of the device
+   * @return the timestamp, or null if the token isn't unregistered
+   */
+  @Nullable
+  public Instant getTimestamp(String token) {
+    var bytes = decode(token);
+    if (bytes == null || (bloomFilter != null && !bloomFilter.mightContain(bytes))) {
+      return null;
+    }
+
+    var timestamp = timestamps.get(new TokenKey(bytes));
+    return timestamp == null ? null : Instant.ofEpochMilli(timestamp);
+  }
+
+  /**
+   * Records the device token as unregistered. Only the latest timestamp
+   * is kept, and the listener is notified only when it changes.
+   *
+   * @param token     of the device
+   * @param timestamp the last time Apple's APNS service confirmed the token was valid
+   */
+  public void unregister(String token, Instant timestamp) {
+    Objects.requireNonNull(timestamp, "Timestamp must not be null");
+
+    var bytes = decode(token);
+    if (bytes == null) {
+      return;
+    }
+
+    var millis = timestamp.toEpochMilli();
+    var changed = new boolean[1];
+
+    if (bloomFilter != null) {
+      bloomFilter.add(bytes);
+    }
+
+    timestamps.compute(new TokenKey(bytes), (key, current) -> {
+      if (current != null && current >= millis) {
+        return current;
+      }
+
+      changed[0] = true;
+      return millis;
+    });
+
+    if (changed[0] && listener != null) {
+      try {
+        listener.onUnregistered(token, timestamp);
+      } catch (RuntimeException e) {
+        // A failing listener must not fail the send that got the response
+        LOGGER.log(System.Logger.Level.WARNING, "Unregistered token listener failed", e);
+      }
+    }
+  }
+
+  /**
+   * Records that the device registered the token again. As Apple states,
+   * the token is valid again only if it was registered after the
+   * timestamp reported with the invalidation.
+   *
+   * @param token        of the device
+   * @param registeredAt when the device registered the token
+   * @return true if the token is no longer unregistered, false if it still is
+   */
+  public boolean register(String token, Instant registeredAt) {
+    Objects.requireNonNull(registeredAt, "Registration time must not be null");
+
+    var bytes = decode(token);
+    if (bytes == null) {
+      return true;
+    }
+
+    var millis = registeredAt.toEpochMilli();
+    var remaining = timestamps.computeIfPresent(new TokenKey(bytes), (key, timestamp) ->
+      millis > timestamp ? null : timestamp);
+
+    return remaining == null;
+  }
+
+  /**
+   * Gets how many device tokens are unregistered.
+   *
+   * @return the number of unregistered tokens
+   */
+  public int size() {
+    return timestamps.size();
+  }
+
+  /**
+   * Decodes a hexadecimal device token.
+   *
+   * @return the raw bytes, or null if the token isn't hexadecimal
+   */
+  private static byte[] decode(String token) {
+    if (token == null || token.isEmpty() || token.length() % 2 != 0) {
+      return null;
+    }
+
+    var bytes = new byte[token.length() / 2];
+    for (var i = 0; i < bytes.length; i++) {
+      var high = DeviceToken.digit(token.charAt(i * 2));
+      var low = DeviceToken.digit(token.charAt(i * 2 + 1));
+
+      if (high < 0 || low < 0) {
+        return null;
+      }
+
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Creates a new {@link UnregisteredTokens.Builder}.
+   *
+   * @return A {@link UnregisteredTokens.Builder} instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private int expectedTokens = 1024;
+    private boolean bloomFilter;
+    private UnregisteredTokenListener listener;
+
+    /**
+     * Sets how many unregistered tokens are expected, used to size
+     * the map and the Bloom filter. Defaults to 1024.
+     *
+     * @param expectedTokens the expected number of unregistered tokens
+     * @return this builder
+     */
+    public Builder setExpectedTokens(int expectedTokens) {
+      this.expectedTokens = expectedTokens;
+      return this;
+    }
+
+    /**
+     * Enables a Bloom filter in front of the map. Worth it when lookups
+     * of live tokens far outnumber the unregistered ones.
+     *
+     * @param bloomFilter whether to use a Bloom filter
+     * @return this builder
+     */
+    public Builder setBloomFilter(boolean bloomFilter) {
+      this.bloomFilter = bloomFilter;
+      return this;
+    }
+
+    public Builder setListener(UnregisteredTokenListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    /**
+     * Creates a new {@link UnregisteredTokens} instance.
+     *
+     * @return A new {@link UnregisteredTokens} instance.
+     * @throws IllegalArgumentException If the expected number of tokens is not positive.
+     */
+    public UnregisteredTokens build() {
+      if (expectedTokens < 1) {
+        throw new IllegalArgumentException("Expected tokens must be positive");
+      }
+
+      return new UnregisteredTokens(this);
+    }
+  }
+
+  private static class TokenKey {
+
+    private final byte[] bytes;
+    private final int hash;
+
+    private TokenKey(byte[] bytes) {
+      this.bytes = bytes;
+      this.hash = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof TokenKey && Arrays.equals(bytes, ((TokenKey) other).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+  static final long RTT = TimeUnit.MILLISECONDS.toNanos(20);
+
+  @Test
+  @DisplayName("Should grow up to the capacity while the latency holds")
+  void growWhileLatencyHolds() {
+    var limiter = new AdaptiveLimiter(ConcurrencyLimit.adaptive(10, 1, 1000), 100);
+    var now = System.nanoTime();
+
+    for (var i = 0; i < 100; i++) {
+      now = window(limiter, now, RTT, limiter.getLimit(), false);
+    }
+
+    assertEquals(100, limiter.getLimit());
+  }
+
+  @Test
+  @DisplayName("Should not grow while the limit isn't used")
+  void notGrowWhileUnused() {
+    var limiter = new AdaptiveLimiter(ConcurrencyLimit.adaptive(), 1000);
+    var now = System.nanoTime();
+
+    for (var i = 0; i < 100; i++) {
+      now = window(limiter, now, RTT, 2, false);
+    }
+
+    assertEquals(20, limiter.getLimit());
+  }
+
+  @Test
+  @DisplayName("Should shrink as the latency rises")
+  void shrinkAsLatencyRises() {
+    var limiter = new AdaptiveLimiter(ConcurrencyLimit.adaptive(100, 1, 1000), 1000);
+    var now = System.nanoTime();
+
+    for (var i = 0; i < 10; i++) {
+      now = window(limiter, now, RTT, limiter.getLimit(), false);
+    }
+
+    var grown = limiter.getLimit();
+
+    for (var i = 0; i < 5; i++) {
+      now = window(limiter, now, RTT * 4, limiter.getLimit(), false);
+    }
+
+    assertTrue(limiter.getLimit() < grown / 2);
+  }
+
+  @Test
+  @DisplayName("Should back off once per window on failures")
+  void backOffOnFailures() {
+    var limiter = new AdaptiveLimiter(ConcurrencyLimit.adaptive(100, 5, 100), 1000);
+    var now = System.nanoTime();
+
+    // a window is closed by the first sample of the next one
+    now = window(limiter, now, RTT, 100, false);
+    now = window(limiter, now, RTT, 100, true);
+    now = window(limiter, now, RTT, 100, true);
+    assertEquals(90, limiter.getLimit());
+
+    window(limiter, now, RTT, 100, true);
+    assertEquals(81, limiter.getLimit());
+  }
+
+  @Test
+  @DisplayName("Should keep growing under a low steady error rate")
+  void ignoreLowErrorRate() {
+    var limiter = new AdaptiveLimiter(ConcurrencyLimit.adaptive(100, 5, 1000), 1000);
+    var now = System.nanoTime();
+
+    for (var i = 0; i < 50; i++) {
+      var inFlight = Math.max(100, limiter.getLimit());
+      var start = now;
+
+      // one failure out of every hundred requests
+      now = window(limiter, now, RTT, inFlight - 1, false);
+      limiter.onSample(start, now, inFlight, true);
+    }
+
+    assertTrue(limiter.getLimit() > 100);
+  }
+
+  @Test
+  @DisplayName("Should hold the notifications in flight to the current limit")
+  void holdToLimit() {
+    var limiter = new AdaptiveLimiter(ConcurrencyLimit.adaptive(2, 1, 10), 10);
+    var scheduler = new PriorityScheduler(10, 0, 4, limiter, ApnsMetrics.NOOP);
+    var pending = new ArrayList<CompletableFuture<ApnsResponse>>();
+
+    for (var i = 0; i < 5; i++) {
+      scheduler.submit(ApnsMessage.builder().setToken("a1b2c3").build(), () -> {
+        var future = new CompletableFuture<ApnsResponse>();
+        pending.add(future);
+        return future;
+      });
+    }
+
+    assertEquals(2, scheduler.getLimit());
+    assertEquals(2, scheduler.getInFlight());
+    assertEquals(3, scheduler.getQueued(ApnsMessage.Priority.IMMEDIATE));
+  }
+
+  @Test
+  @DisplayName("Should not accept limits out of order")
+  void rejectLimitsOutOfOrder() {
+    assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimit.adaptive(10, 20, 100));
+    assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimit.adaptive(10, 0, 100));
+  }
+
+  static long window(AdaptiveLimiter limiter, long now, long rtt, int inFlight, boolean dropped) {
+    for (var i = 0; i < inFlight; i++) {
+      limiter.onSample(now, now + rtt, inFlight, dropped);
+    }
+
+    return now + rtt;
+  }
+}
@@ -0,0 +1,28 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApnsExecutorsTest {
+
+  @Test
+  @DisplayName("Should share a single virtual thread executor")
+  void shareExecutor() {
+    assertSame(ApnsExecutors.virtualThreads(), ApnsExecutors.virtualThreads());
+  }
+
+  @Test
+  @DisplayName("Should run tasks on daemon threads")
+  void runOnDaemonThreads() {
+    var thread = CompletableFuture.supplyAsync(Thread::currentThread, ApnsExecutors.virtualThreads()).join();
+
+    assertTrue(thread.isDaemon());
+    assertEquals(Runtime.version().feature() >= 21, ApnsExecutors.isVirtualThreadsSupported());
+  }
+}
@@ -10,12 +10,16 @@ import java.util.stream.Collectors;
 public class ApnsKeys {
 
   static ApnsKey readKey() throws IOException {
+    return readKey("A1B2C3D4F5", "A1B2C3D4F5");
+  }
+
+  static ApnsKey readKey(String keyId, String teamId) throws IOException {
     try (InputStream resource = ApnsKeyTest.class.getResourceAsStream("/key.p8")) {
       var inputStreamReader = new InputStreamReader(resource, StandardCharsets.UTF_8);
       var key = new BufferedReader(inputStreamReader).lines()
         .collect(Collectors.joining());
 
-      return ApnsKey.of(key, "A1B2C3D4F5", "A1B2C3D4F5");
+      return ApnsKey.of(key, keyId, teamId);
     }
   }
 }
@@ -8,6 +8,8 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.net.URI;
+import java.time.Instant;
+import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.containing;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
@@ -15,6 +17,8 @@ import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ApnsMessagingTest {
 
@@ -59,4 +63,58 @@ class ApnsMessagingTest {
         .withRequestBody(matchingJsonPath("$.aps.alert.body", equalTo("Body")))
       );
   }
+
+  @Test
+  @DisplayName("Should broadcast the same notification to every token")
+  void broadcastNotification() throws IOException {
+    var message = ApnsMessage.builder()
+      .setToken("ignored")
+      .setTopic("topic")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("Broadcast")
+          .build())
+        .build())
+      .build();
+
+    var result = apnsMessaging.broadcast(message, List.of("a1b2c3", "d4e5f6")).join();
+
+    assertEquals(2, result.getTotal());
+    wireMockServer
+      .verify(postRequestedFor(urlEqualTo("/3/device/a1b2c3"))
+        .withRequestBody(matchingJsonPath("$.aps.alert.title", equalTo("Broadcast"))));
+    wireMockServer
+      .verify(postRequestedFor(urlEqualTo("/3/device/d4e5f6"))
+        .withRequestBody(matchingJsonPath("$.aps.alert.title", equalTo("Broadcast"))));
+  }
+
+  @Test
+  @DisplayName("Should send the expiration of the notification")
+  void sendExpiration() throws IOException, InterruptedException {
+    var expiration = (int) Instant.now().plusSeconds(3600).getEpochSecond();
+
+    apnsMessaging.send(ApnsMessage.builder()
+      .setToken("a7b8c9")
+      .setTopic("topic")
+      .setExpiration(expiration)
+      .build());
+
+    wireMockServer
+      .verify(postRequestedFor(urlEqualTo("/3/device/a7b8c9"))
+        .withHeader("apns-expiration", equalTo(String.valueOf(expiration))));
+  }
+
+  @Test
+  @DisplayName("Should drop notifications expired before they are sent")
+  void dropExpired() {
+    var failure = assertThrows(MessageRejectedException.class, () -> apnsMessaging.send(ApnsMessage.builder()
+      .setToken("f1e2d3")
+      .setTopic("topic")
+      .setExpiration((int) Instant.now().minusSeconds(60).getEpochSecond())
+      .build()));
+
+    assertEquals(MessageRejectedException.Reason.EXPIRED, failure.getReason());
+    assertEquals(1, apnsMessaging.getExpiredCount());
+    wireMockServer.verify(0, postRequestedFor(urlEqualTo("/3/device/f1e2d3")));
+  }
 }
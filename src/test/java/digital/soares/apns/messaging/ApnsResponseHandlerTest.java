@@ -0,0 +1,42 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ApnsResponseHandlerTest {
+
+  @Test
+  @DisplayName("Should parse the reason and the timestamp")
+  void parseUnregistered() {
+    var body = "{\"reason\":\"Unregistered\",\"timestamp\":1588000000000}".getBytes(StandardCharsets.UTF_8);
+    var response = ApnsResponseHandler.parse(410, null, body);
+
+    assertEquals(410, response.getStatusCode());
+    assertEquals(ApnsResponse.Reason.UNREGISTERED, response.getReason());
+    assertEquals(Instant.ofEpochMilli(1588000000000L), response.getTimestamp());
+  }
+
+  @Test
+  @DisplayName("Should ignore unknown fields and reasons")
+  void parseUnknown() {
+    var body = "{\"extra\":{\"a\":[1,2]},\"reason\":\"SomethingNew\"}".getBytes(StandardCharsets.UTF_8);
+    var response = ApnsResponseHandler.parse(400, null, body);
+
+    assertEquals(ApnsResponse.Reason.UNKNOWN, response.getReason());
+    assertNull(response.getTimestamp());
+  }
+
+  @Test
+  @DisplayName("Should tolerate malformed bodies")
+  void parseMalformed() {
+    var response = ApnsResponseHandler.parse(500, null, "<html>".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(ApnsResponse.Reason.UNKNOWN, response.getReason());
+  }
+}
@@ -0,0 +1,349 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApnsSimulatorTest {
+
+  static final ApnsKeyPair KEY_PAIR = ApnsKeyPair.generate("A1B2C3D4F5", "A1B2C3D4F5");
+
+  @Test
+  @DisplayName("Should multiplex notifications over a single HTTP/2 connection")
+  void multiplexNotifications() throws IOException, InterruptedException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofMillis(20)))
+      .build();
+         var apnsMessaging = create(simulator, RetryPolicy.none())) {
+
+      var messages = new ArrayList<ApnsMessage>();
+      for (var i = 0; i < 500; i++) {
+        messages.add(message(String.format("%064x", i)));
+      }
+
+      // the JDK client opens a connection per request until one is established
+      apnsMessaging.send(message("d4e5f6"));
+      var result = apnsMessaging.sendAll(messages).join();
+
+      assertEquals(500, result.getSucceeded());
+      assertEquals(1, simulator.getConnectionCount());
+      assertTrue(simulator.getPeakConcurrentStreams() > 1);
+    }
+  }
+
+  @Test
+  @DisplayName("Should reject provider tokens signed by an unknown key")
+  void rejectUnknownProviderKey() throws IOException, InterruptedException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(ApnsKeyPair.generate("F5D4C3B2A1", "A1B2C3D4F5"))
+      .build();
+         var apnsMessaging = create(simulator, RetryPolicy.none())) {
+
+      var response = apnsMessaging.send(message("cc566d1c79f4470f96015b0e3b402abb"));
+
+      assertEquals(403, response.getStatusCode());
+      assertEquals(ApnsResponse.Reason.INVALID_PROVIDER_TOKEN, response.getReason());
+    }
+  }
+
+  @Test
+  @DisplayName("Should answer injected faults for a device token")
+  void injectTokenFault() throws IOException, InterruptedException {
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.unregistered())
+      .build();
+         var apnsMessaging = create(simulator, RetryPolicy.none())) {
+
+      var response = apnsMessaging.send(message(token));
+
+      assertEquals(ApnsResponse.Reason.UNREGISTERED, response.getReason());
+      assertNotNull(response.getTimestamp());
+      assertTrue(apnsMessaging.send(message("d4e5f6")).isSuccessful());
+    }
+  }
+
+  @Test
+  @DisplayName("Should retry until the attempts are exhausted")
+  void retryTooManyRequests() throws IOException, InterruptedException {
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+    var retryPolicy = RetryPolicy.builder()
+      .setMaxAttempts(3)
+      .setInitialBackoff(Duration.ofMillis(1))
+      .build();
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.tooManyRequests())
+      .build();
+         var apnsMessaging = create(simulator, retryPolicy)) {
+
+      var response = apnsMessaging.send(message(token));
+
+      assertEquals(429, response.getStatusCode());
+      assertEquals(3, simulator.getRequestCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should fail streams left open by a GOAWAY and reconnect")
+  void reconnectAfterGoAway() throws IOException, InterruptedException {
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.goAway())
+      .build();
+         var apnsMessaging = create(simulator, RetryPolicy.none())) {
+
+      assertThrows(IOException.class, () -> apnsMessaging.send(message(token)));
+      assertEquals(200, apnsMessaging.send(message("d4e5f6")).getStatusCode());
+      assertEquals(2, simulator.getConnectionCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should complete sends on the configured executor")
+  void completeOnExecutor() throws Exception {
+    var executor = Executors.newCachedThreadPool(runnable -> new Thread(runnable, "custom-executor"));
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofMillis(100)))
+      .build();
+         var apnsMessaging = ApnsMessaging.builder()
+           .setApnsKey(KEY_PAIR.getApnsKey())
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .setExecutor(executor)
+           .build()) {
+
+      var thread = apnsMessaging.sendAsync(message("cc566d1c79f4470f96015b0e3b402abb"))
+        .thenApply(response -> Thread.currentThread().getName())
+        .join();
+
+      assertEquals("custom-executor", thread);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  @DisplayName("Should be accepted with tokens of the built-in signer")
+  void acceptBuiltInSigner() throws IOException, InterruptedException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .build();
+         var apnsMessaging = ApnsMessaging.builder()
+           .setApnsKey(KEY_PAIR.getApnsKey())
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .setTokenSigner(TokenSigner.builtIn())
+           .build()) {
+
+      assertEquals(200, apnsMessaging.send(message("cc566d1c79f4470f96015b0e3b402abb")).getStatusCode());
+    }
+  }
+
+  @Test
+  @DisplayName("Should send for many tenants over the same connection")
+  void sendForManyTenants() throws IOException, InterruptedException {
+    var tenants = new ArrayList<ApnsKeyPair>();
+    var simulatorBuilder = ApnsSimulator.builder();
+
+    for (var i = 0; i < 3; i++) {
+      var tenant = ApnsKeyPair.generate("KEY000000" + i, "TEAM00000" + i);
+      tenants.add(tenant);
+      simulatorBuilder.addProviderKey(tenant);
+    }
+
+    try (var simulator = simulatorBuilder.build();
+         var apnsMessaging = ApnsMessaging.builder()
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .build()) {
+
+      for (var tenant : tenants) {
+        var response = apnsMessaging.send(ApnsMessage.builder()
+          .setToken("cc566d1c79f4470f96015b0e3b402abb")
+          .setTopic("topic")
+          .setApnsKey(tenant.getApnsKey())
+          .build());
+
+        assertEquals(200, response.getStatusCode());
+      }
+
+      var unknown = apnsMessaging.send(ApnsMessage.builder()
+        .setToken("cc566d1c79f4470f96015b0e3b402abb")
+        .setTopic("topic")
+        .setApnsKey(KEY_PAIR.getApnsKey())
+        .build());
+
+      assertEquals(403, unknown.getStatusCode());
+      assertEquals(4, apnsMessaging.getApnsKeyCount());
+      assertEquals(1, simulator.getConnectionCount());
+      assertThrows(IllegalArgumentException.class, () -> apnsMessaging.send(message("d4e5f6")));
+    }
+  }
+
+  @Test
+  @DisplayName("Should open every connection when warming up")
+  void warmUpConnections() throws IOException, InterruptedException {
+    var metrics = new InMemoryApnsMetrics();
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .build();
+         var apnsMessaging = ApnsMessaging.builder()
+           .setApnsKey(KEY_PAIR.getApnsKey())
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .setConnectionPoolSize(2)
+           .setMetrics(metrics)
+           .build()) {
+
+      apnsMessaging.warmUp().join();
+
+      assertEquals(2, simulator.getConnectionCount());
+      assertEquals(2, apnsMessaging.getWarmConnectionCount());
+      assertEquals(2, metrics.getWarmUps());
+
+      assertEquals(200, apnsMessaging.send(message("cc566d1c79f4470f96015b0e3b402abb")).getStatusCode());
+      assertEquals(0, metrics.getColdRequests());
+    }
+  }
+
+  @Test
+  @DisplayName("Should refuse notifications locally while the circuit is open")
+  void openCircuit() throws IOException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(ApnsSimulator.Fault.serviceUnavailable(), 1.0)
+      .build();
+         var apnsMessaging = ApnsMessaging.builder()
+           .setApnsKey(KEY_PAIR.getApnsKey())
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .setCircuitBreakerPolicy(CircuitBreakerPolicy.builder()
+             .setMinimumRequests(10)
+             .setOpenDuration(Duration.ofMinutes(1))
+             .build())
+           .build()) {
+
+      for (var i = 0; i < 10; i++) {
+        assertEquals(503, apnsMessaging.sendAsync(message("d4e5f6")).join().getStatusCode());
+      }
+
+      var failure = assertThrows(MessageRejectedException.class, () -> apnsMessaging.send(message("d4e5f6")));
+
+      assertEquals(MessageRejectedException.Reason.CIRCUIT_OPEN, failure.getReason());
+      assertTrue(apnsMessaging.isCircuitOpen());
+      assertEquals(10, simulator.getRequestCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should acknowledge journaled notifications that can't be built")
+  void acknowledgeMalformedNotification(@TempDir Path directory) throws IOException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .build();
+         var journal = SendJournal.open(directory);
+         var apnsMessaging = ApnsMessaging.builder()
+           .setApnsKey(KEY_PAIR.getApnsKey())
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .setJournal(journal)
+           .build()) {
+
+      var failure = assertThrows(CompletionException.class,
+        () -> apnsMessaging.sendAsync(message("not a token")).join());
+
+      assertTrue(failure.getCause() instanceof IllegalArgumentException);
+      assertEquals(0, journal.getPendingCount());
+      assertEquals(0, simulator.getRequestCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should not use up the topic quota on notifications refused for their device")
+  void keepTopicQuotaOnDeviceRejection() throws IOException, InterruptedException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .build();
+         var apnsMessaging = ApnsMessaging.builder()
+           .setApnsKey(KEY_PAIR.getApnsKey())
+           .setEnvironment(simulator.environment())
+           .setSslContext(ApnsSimulator.clientSslContext())
+           .setTopicRateLimit(RateLimit.of(1, 2))
+           .setDeviceRateLimit(RateLimit.of(1, 1))
+           .setMaxRateLimitDelay(Duration.ZERO)
+           .build()) {
+
+      assertTrue(apnsMessaging.send(message("a1b2c3")).isSuccessful());
+
+      var failure = assertThrows(MessageRejectedException.class, () -> apnsMessaging.send(message("a1b2c3")));
+      assertEquals(MessageRejectedException.Reason.RATE_LIMITED, failure.getReason());
+
+      assertTrue(apnsMessaging.send(message("d4e5f6")).isSuccessful());
+    }
+  }
+
+  @Test
+  @DisplayName("Should time out each attempt after the timeout of its message")
+  void timeOutPerMessage() throws IOException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofSeconds(2)))
+      .build();
+         var apnsMessaging = create(simulator, RetryPolicy.none())) {
+
+      apnsMessaging.warmUp().join();
+
+      var start = System.nanoTime();
+      assertThrows(HttpTimeoutException.class, () -> apnsMessaging.send(ApnsMessage.builder()
+        .setToken("d4e5f6")
+        .setTimeout(Duration.ofMillis(100))
+        .build()));
+
+      assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+    }
+  }
+
+  static ApnsMessaging create(ApnsSimulator simulator, RetryPolicy retryPolicy) {
+    return ApnsMessaging.builder()
+      .setApnsKey(KEY_PAIR.getApnsKey())
+      .setEnvironment(simulator.environment())
+      .setSslContext(ApnsSimulator.clientSslContext())
+      .setRetryPolicy(retryPolicy)
+      .build();
+  }
+
+  static ApnsMessage message(String token) {
+    return ApnsMessage.builder()
+      .setToken(token)
+      .setTopic("topic")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("Title")
+          .build())
+        .build())
+      .build();
+  }
+}
@@ -0,0 +1,65 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkSenderTest {
+
+  @Test
+  @DisplayName("Should never exceed the in-flight limit")
+  void boundInFlight() {
+    var pending = new ArrayDeque<CompletableFuture<ApnsResponse>>();
+    var maxSeen = new AtomicInteger();
+
+    var result = new BulkSender(messages(100), message -> {
+      var future = new CompletableFuture<ApnsResponse>();
+      pending.add(future);
+      maxSeen.accumulateAndGet(pending.size(), Math::max);
+      return future;
+    }, null, 8).start();
+
+    completeAll(pending);
+
+    assertTrue(result.isDone());
+    assertEquals(8, maxSeen.get());
+    assertEquals(100, result.join().getFailed());
+  }
+
+  @Test
+  @DisplayName("Should report the outcome of each message")
+  void reportOutcomes() {
+    var outcomes = new AtomicInteger();
+
+    var result = new BulkSender(messages(10), message ->
+      CompletableFuture.failedFuture(new IllegalStateException()), sendResult -> {
+      assertFalse(sendResult.isSuccessful());
+      outcomes.incrementAndGet();
+    }, 4).start();
+
+    assertEquals(10, outcomes.get());
+    assertEquals(10, result.join().getTotal());
+  }
+
+  private static Iterator<ApnsMessage> messages(int count) {
+    return IntStream.range(0, count)
+      .mapToObj(i -> ApnsMessage.builder().setToken("token" + i).build())
+      .iterator();
+  }
+
+  private static void completeAll(Queue<CompletableFuture<ApnsResponse>> pending) {
+    while (!pending.isEmpty()) {
+      pending.poll().completeExceptionally(new IllegalStateException());
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+  @Test
+  @DisplayName("Should open once the failure rate reaches the threshold")
+  void openAtThreshold() {
+    var breaker = breaker(Duration.ofMinutes(1));
+
+    for (var i = 0; i < 5; i++) {
+      breaker.onOutcome(breaker.tryAcquire(), i % 2 == 0);
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+    breaker.onOutcome(breaker.tryAcquire(), true);
+
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertTrue(breaker.isOpen());
+    assertEquals(-1, breaker.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("Should close after the probes succeed and open again when one fails")
+  void probeAfterOpenDuration() throws InterruptedException {
+    var breaker = breaker(Duration.ofMillis(1));
+    open(breaker);
+    Thread.sleep(5);
+
+    var first = breaker.tryAcquire();
+    var second = breaker.tryAcquire();
+
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertEquals(-1, breaker.tryAcquire());
+
+    breaker.onOutcome(first, false);
+    breaker.onOutcome(second, false);
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+    open(breaker);
+    Thread.sleep(5);
+    breaker.onOutcome(breaker.tryAcquire(), true);
+
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  @DisplayName("Should ignore outcomes of requests allowed before the circuit opened")
+  void ignoreEarlierGeneration() throws InterruptedException {
+    var breaker = breaker(Duration.ofMillis(1));
+    var early = breaker.tryAcquire();
+    open(breaker);
+    Thread.sleep(5);
+
+    var probe = breaker.tryAcquire();
+    breaker.onOutcome(early, false);
+    breaker.onOutcome(early, false);
+    breaker.onOutcome(probe, false);
+
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+  }
+
+  @Test
+  @DisplayName("Should count only server errors and I/O failures")
+  void countServiceFailures() {
+    assertTrue(CircuitBreaker.isFailure(new ApnsResponse(503, null, null, null), null));
+    assertTrue(CircuitBreaker.isFailure(null, new HttpTimeoutException("request timed out")));
+    assertFalse(CircuitBreaker.isFailure(new ApnsResponse(429, null, null, null), null));
+    assertFalse(CircuitBreaker.isFailure(new ApnsResponse(410, null, null, null), null));
+    assertFalse(CircuitBreaker.isFailure(null,
+      new MessageRejectedException(MessageRejectedException.Reason.CIRCUIT_OPEN, "Circuit breaker is open")));
+    assertFalse(CircuitBreaker.isFailure(null, new IllegalStateException()));
+    assertTrue(CircuitBreaker.isFailure(null, new IOException()));
+  }
+
+  static CircuitBreaker breaker(Duration openDuration) {
+    return new CircuitBreaker(CircuitBreakerPolicy.builder()
+      .setFailureRateThreshold(0.5)
+      .setWindowSize(10)
+      .setMinimumRequests(6)
+      .setOpenDuration(openDuration)
+      .setProbes(2)
+      .build());
+  }
+
+  static void open(CircuitBreaker breaker) {
+    for (var i = 0; i < 6; i++) {
+      breaker.onOutcome(breaker.tryAcquire(), true);
+    }
+  }
+}
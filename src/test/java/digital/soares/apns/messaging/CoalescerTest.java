@@ -0,0 +1,115 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescerTest {
+
+  static final byte[] BODY = new byte[0];
+
+  @Test
+  @DisplayName("Should send only the newest notification held while one is in flight")
+  void coalesceWhileInFlight() {
+    var sent = new ArrayList<ApnsMessage>();
+    var pending = new ArrayList<CompletableFuture<ApnsResponse>>();
+    var coalesced = new ArrayList<ApnsMessage>();
+    var coalescer = new Coalescer(0, (message, body) -> send(sent, pending, message), coalesced::add);
+
+    var first = coalescer.submit(message("a1b2c3", "score"), BODY);
+    var second = coalescer.submit(message("a1b2c3", "score"), BODY);
+    var third = coalescer.submit(message("a1b2c3", "score"), BODY);
+    var latest = message("a1b2c3", "score");
+    var fourth = coalescer.submit(latest, BODY);
+
+    assertEquals(1, sent.size());
+    assertEquals(1, coalescer.getHeldCount());
+    assertEquals(2, coalesced.size());
+    assertRejected(second);
+    assertRejected(third);
+
+    pending.get(0).complete(response());
+
+    assertTrue(first.isDone());
+    assertEquals(2, sent.size());
+    assertSame(latest, sent.get(1));
+
+    pending.get(1).complete(response());
+    assertEquals(200, fourth.join().getStatusCode());
+    assertEquals(0, coalescer.getHeldCount());
+  }
+
+  @Test
+  @DisplayName("Should hold notifications until the window is over")
+  void holdUntilWindowOver() throws Exception {
+    var sent = new ArrayList<ApnsMessage>();
+    var coalescer = new Coalescer(TimeUnit.MILLISECONDS.toNanos(100), (message, body) -> {
+      synchronized (sent) {
+        sent.add(message);
+      }
+      return CompletableFuture.completedFuture(response());
+    }, message -> {
+    });
+
+    coalescer.submit(message("a1b2c3", "score"), BODY).join();
+    var held = coalescer.submit(message("a1b2c3", "score"), BODY);
+
+    synchronized (sent) {
+      assertEquals(1, sent.size());
+    }
+
+    assertEquals(200, held.get(1, TimeUnit.SECONDS).getStatusCode());
+
+    synchronized (sent) {
+      assertEquals(2, sent.size());
+    }
+  }
+
+  @Test
+  @DisplayName("Should not coalesce notifications with different collapse ids or devices")
+  void keepDistinctKeys() {
+    var sent = new ArrayList<ApnsMessage>();
+    var coalescer = new Coalescer(0, (message, body) -> send(sent, new ArrayList<>(), message), message -> {
+    });
+
+    coalescer.submit(message("a1b2c3", "score"), BODY);
+    coalescer.submit(message("a1b2c3", "badge"), BODY);
+    coalescer.submit(message("d4e5f6", "score"), BODY);
+
+    assertEquals(3, sent.size());
+  }
+
+  static CompletableFuture<ApnsResponse> send(List<ApnsMessage> sent, List<CompletableFuture<ApnsResponse>> pending,
+                                              ApnsMessage message) {
+    var future = new CompletableFuture<ApnsResponse>();
+    sent.add(message);
+    pending.add(future);
+    return future;
+  }
+
+  static void assertRejected(CompletableFuture<ApnsResponse> future) {
+    var failure = assertThrows(CompletionException.class, future::join);
+    assertEquals(MessageRejectedException.Reason.COALESCED, ((MessageRejectedException) failure.getCause()).getReason());
+  }
+
+  static ApnsMessage message(String token, String collapseId) {
+    return ApnsMessage.builder()
+      .setToken(token)
+      .setCollapseId(collapseId)
+      .build();
+  }
+
+  static ApnsResponse response() {
+    return new ApnsResponse(200, null, null, null);
+  }
+}
@@ -0,0 +1,110 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+
+  @Test
+  @DisplayName("Should pick the connection with the least streams in flight")
+  void pickLeastInFlight() {
+    var pool = new ConnectionPool(3, ConnectionPoolTest::channel);
+
+    var first = pool.acquire();
+    var second = pool.acquire();
+    var third = pool.acquire();
+
+    assertEquals(1, first.getInFlight());
+    assertEquals(1, second.getInFlight());
+    assertEquals(1, third.getInFlight());
+
+    pool.release(second, null);
+    assertSame(second, pool.acquire());
+  }
+
+  @Test
+  @DisplayName("Should replace connections that failed")
+  void replaceFailedConnection() {
+    var pool = new ConnectionPool(1, ConnectionPoolTest::channel);
+
+    var connection = pool.acquire();
+    pool.release(connection, new HttpTimeoutException("request timed out"));
+    assertSame(connection, pool.acquire());
+
+    pool.release(connection, new StreamResetException("stream refused"));
+    assertSame(connection, pool.acquire());
+
+    pool.release(connection, new IOException("connection reset"));
+    assertNotSame(connection, pool.acquire());
+  }
+
+  @Test
+  @DisplayName("Should close the connections it replaces")
+  void closeReplacedConnection() {
+    var closed = new boolean[1];
+    var pool = new ConnectionPool(1, () -> new Transport.Channel() {
+      @Override
+      public CompletableFuture<ApnsResponse> send(ApnsRequest request) {
+        return new CompletableFuture<>();
+      }
+
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    });
+
+    pool.release(pool.acquire(), new IOException("connection reset"));
+
+    assertTrue(closed[0]);
+  }
+
+  @Test
+  @DisplayName("Should open a single channel when many streams of a connection fail")
+  void replaceOnceOnManyFailures() {
+    var opened = new AtomicInteger();
+    var pool = new ConnectionPool(1, () -> {
+      opened.incrementAndGet();
+      return channel();
+    });
+
+    var streams = List.of(pool.acquire(), pool.acquire(), pool.acquire());
+    streams.forEach(connection -> pool.release(connection, new IOException("connection reset")));
+
+    assertEquals(2, opened.get());
+    assertNotSame(streams.get(0), pool.get(0));
+  }
+
+  @Test
+  @DisplayName("Should be warm once a stream completed, until replaced")
+  void trackWarmConnections() {
+    var pool = new ConnectionPool(2, ConnectionPoolTest::channel);
+
+    var connection = pool.acquire(0);
+    assertFalse(connection.isWarm());
+
+    pool.release(connection, null);
+    assertTrue(connection.isWarm());
+    assertEquals(1, pool.getWarmCount());
+
+    pool.release(pool.acquire(0), new IOException("connection reset"));
+    assertFalse(pool.get(0).isWarm());
+    assertEquals(0, pool.getWarmCount());
+  }
+
+  static Transport.Channel channel() {
+    return request -> new CompletableFuture<>();
+  }
+}
@@ -0,0 +1,91 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DeviceTokenTest {
+
+  static final String TOKEN = "5b2a1c7f0e3d4a6b8c9d0e1f2a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d";
+
+  @Test
+  @DisplayName("Should parse tokens and print them back in lowercase")
+  void parseAndPrint() {
+    var token = DeviceToken.parse(TOKEN.toUpperCase());
+
+    assertEquals(TOKEN, token.toString());
+    assertEquals(32, token.length());
+    assertEquals(token, DeviceToken.of(token.toBytes()));
+    assertEquals(token.hashCode(), DeviceToken.parse(TOKEN).hashCode());
+    assertNotEquals(token, DeviceToken.parse(TOKEN.replace('5', '6')));
+  }
+
+  @Test
+  @DisplayName("Should keep tokens of other lengths")
+  void keepOtherLengths() {
+    var token = DeviceToken.parse("00ff10");
+
+    assertEquals("00ff10", token.toString());
+    assertArrayEquals(new byte[] {0, (byte) 0xFF, 0x10}, token.toBytes());
+    assertEquals(token, DeviceToken.of(new byte[] {0, (byte) 0xFF, 0x10}));
+  }
+
+  @Test
+  @DisplayName("Should refuse tokens that are not hex")
+  void refuseInvalidTokens() {
+    assertThrows(IllegalArgumentException.class, () -> DeviceToken.parse(""));
+    assertThrows(IllegalArgumentException.class, () -> DeviceToken.parse("abc"));
+    assertThrows(IllegalArgumentException.class, () -> DeviceToken.parse(TOKEN.replace('5', 'g')));
+    assertThrows(IllegalArgumentException.class, () -> DeviceToken.parse("0".repeat(202)));
+    assertThrows(IllegalArgumentException.class, () -> DeviceToken.of(new byte[0]));
+  }
+
+  @Test
+  @DisplayName("Should build the same URI from a string or a device token")
+  void createUri() {
+    var environment = ApnsMessaging.AppleEnvironment.PRODUCTION;
+    var expected = URI.create("https://api.push.apple.com/3/device/" + TOKEN);
+
+    assertEquals(expected, environment.createUri(TOKEN));
+    assertEquals(expected, environment.createUri(DeviceToken.parse(TOKEN)));
+    assertEquals("api.push.apple.com", environment.createUri("https://localhost/").getHost());
+  }
+
+  @Test
+  @DisplayName("Should build the request URI from the device token of a message")
+  void createRequestUri() throws IOException {
+    var deviceTokens = new ArrayList<DeviceToken>();
+    var environment = new Environment() {
+      @Override
+      public URI createUri(String token) {
+        return URI.create("https://localhost/3/device/" + token);
+      }
+
+      @Override
+      public URI createUri(DeviceToken token) {
+        deviceTokens.add(token);
+        return createUri(token.toString());
+      }
+    };
+
+    try (var apnsMessaging = ApnsMessaging.of(ApnsKeys.readKey(), environment)) {
+      var message = ApnsMessage.builder().setToken(DeviceToken.parse(TOKEN)).build();
+
+      assertEquals(URI.create("https://localhost/3/device/" + TOKEN),
+        apnsMessaging.createRequest(message, new byte[0]).getUri());
+      assertEquals(List.of(DeviceToken.parse(TOKEN)), deviceTokens);
+
+      apnsMessaging.createRequest(message.withToken(TOKEN), new byte[0]);
+      assertEquals(1, deviceTokens.size());
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+  @Test
+  @DisplayName("Should map every value to a bucket holding it")
+  void mapValuesToBuckets() {
+    for (var value = 0L; value < 100_000; value++) {
+      var index = Histogram.indexOf(value);
+
+      assertTrue(Histogram.highestValueOf(index) >= value);
+      assertTrue(index == 0 || Histogram.highestValueOf(index - 1) < value);
+    }
+
+    assertTrue(Histogram.highestValueOf(Histogram.indexOf(Long.MAX_VALUE)) >= Long.MAX_VALUE - 1);
+  }
+
+  @Test
+  @DisplayName("Should report percentiles within the bucket precision")
+  void reportPercentiles() {
+    var histogram = new Histogram();
+
+    for (var value = 1; value <= 1000; value++) {
+      histogram.record(value * 1_000_000L);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertWithin(500_000_000L, histogram.getPercentile(50));
+    assertWithin(990_000_000L, histogram.getPercentile(99));
+    assertWithin(999_000_000L, histogram.getPercentile(99.9));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual >= expected && actual <= expected * 1.0625, expected + " vs " + actual);
+  }
+}
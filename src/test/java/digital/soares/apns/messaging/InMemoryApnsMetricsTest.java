@@ -0,0 +1,131 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static digital.soares.apns.messaging.ApnsSimulatorTest.KEY_PAIR;
+import static digital.soares.apns.messaging.ApnsSimulatorTest.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryApnsMetricsTest {
+
+  @Test
+  @DisplayName("Should count responses by status code and reason")
+  void countResponses() throws IOException, InterruptedException {
+    var metrics = new InMemoryApnsMetrics();
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.unregistered())
+      .build();
+         var apnsMessaging = builder(simulator, metrics).build()) {
+
+      apnsMessaging.send(message("a1b2c3"));
+      apnsMessaging.send(message(token));
+
+      assertEquals(2, metrics.getRequests());
+      assertEquals(1, metrics.getResponses(200));
+      assertEquals(1, metrics.getResponses(410));
+      assertEquals(1, metrics.getResponses(ApnsResponse.Reason.UNREGISTERED));
+      assertEquals(0, metrics.getFailures());
+      assertTrue(metrics.getPayloadBytes() > 0);
+      assertTrue(metrics.getTokenRefreshes() >= 1);
+    }
+  }
+
+  @Test
+  @DisplayName("Should gauge the requests waiting for a response")
+  void gaugeInFlight() throws IOException, InterruptedException {
+    var metrics = new InMemoryApnsMetrics();
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofMillis(500)))
+      .build();
+         var apnsMessaging = builder(simulator, metrics).build()) {
+
+      var response = apnsMessaging.sendAsync(message("a1b2c3"));
+
+      var deadline = System.nanoTime() + Duration.ofMillis(400).toNanos();
+      while (metrics.getInFlight() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+
+      assertEquals(1, metrics.getInFlight());
+
+      response.join();
+
+      assertEquals(0, metrics.getInFlight());
+    }
+  }
+
+  @Test
+  @DisplayName("Should count retries")
+  void countRetries() throws IOException, InterruptedException {
+    var metrics = new InMemoryApnsMetrics();
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.tooManyRequests())
+      .build();
+         var apnsMessaging = builder(simulator, metrics)
+           .setRetryPolicy(RetryPolicy.builder()
+             .setMaxAttempts(3)
+             .setInitialBackoff(Duration.ofMillis(1))
+             .build())
+           .build()) {
+
+      apnsMessaging.send(message(token));
+
+      assertEquals(2, metrics.getRetries());
+      assertEquals(3, metrics.getResponses(429));
+      assertEquals(3, metrics.getResponses(ApnsResponse.Reason.TOO_MANY_REQUESTS));
+    }
+  }
+
+  @Test
+  @DisplayName("Should count rate limit delays and rejections")
+  void countRateLimits() throws IOException {
+    var metrics = new InMemoryApnsMetrics();
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .build();
+         var apnsMessaging = builder(simulator, metrics)
+           .setTopicRateLimit(RateLimit.of(10, 1))
+           .setMaxRateLimitDelay(Duration.ofMillis(150))
+           .build()) {
+
+      var first = apnsMessaging.sendAsync(message("a1b2c3"));
+      var delayed = apnsMessaging.sendAsync(message("d4e5f6"));
+      var refused = apnsMessaging.sendAsync(message("a7b8c9"));
+
+      assertTrue(first.join().isSuccessful());
+      assertTrue(delayed.join().isSuccessful());
+
+      var failure = assertThrows(CompletionException.class, refused::join);
+      assertTrue(failure.getCause() instanceof MessageRejectedException);
+
+      assertEquals(1, metrics.getRateLimitDelays());
+      assertTrue(metrics.getRateLimitDelay().compareTo(Duration.ofMillis(50)) > 0);
+      assertEquals(1, metrics.getRejections(MessageRejectedException.Reason.RATE_LIMITED));
+      assertEquals(2, metrics.getRequests());
+    }
+  }
+
+  static ApnsMessaging.Builder builder(ApnsSimulator simulator, ApnsMetrics metrics) {
+    return ApnsMessaging.builder()
+      .setApnsKey(KEY_PAIR.getApnsKey())
+      .setEnvironment(simulator.environment())
+      .setSslContext(ApnsSimulator.clientSslContext())
+      .setMetrics(metrics);
+  }
+}
@@ -0,0 +1,142 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PayloadEncoderTest {
+
+  private final PayloadEncoder jackson = PayloadEncoder.jackson();
+  private final PayloadEncoder streaming = PayloadEncoder.streaming();
+
+  @Test
+  @DisplayName("Should encode a simple payload")
+  void encodeSimple() throws IOException {
+    var message = ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("Title")
+          .setBody("Body")
+          .build())
+        .build())
+      .build();
+
+    assertEquals("{\"aps\":{\"alert\":{\"title\":\"Title\",\"body\":\"Body\"}}}",
+      new String(streaming.encode(message), StandardCharsets.UTF_8));
+    assertSameBytes(message);
+  }
+
+  @Test
+  @DisplayName("Should encode every field like Jackson does")
+  void encodeAllFields() throws IOException {
+    assertSameBytes(ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("Title")
+          .setBody("")
+          .setTitleLocKey("TITLE_KEY")
+          .addTitleLocArg("first")
+          .addTitleLocArg("")
+          .setActionLocKey("ACTION_KEY")
+          .setLocKey("LOC_KEY")
+          .addLocArg("arg")
+          .setLaunchImage("image.png")
+          .build())
+        .setBadge(0)
+        .setSound("default")
+        .setContentAvailable(1)
+        .setCategory("")
+        .setThreadId("thread")
+        .build())
+      .putData("chat", "42")
+      .putData("user", "someone")
+      .build());
+  }
+
+  @Test
+  @DisplayName("Should escape strings like Jackson does")
+  void encodeEscapes() throws IOException {
+    assertSameBytes(ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("quote \" backslash \\ slash / \b\t\n\f\r \u0000\u001f\u007f")
+          .setBody("caf\u00e9 \u20ac \ud83d\ude00 \u4e2d\u6587")
+          .build())
+        .build())
+      .putData("k\u00e9y\n", "v\u0001")
+      .build());
+  }
+
+  @Test
+  @DisplayName("Should encode characters outside the basic plane as UTF-8")
+  void encodeSupplementary() throws IOException {
+    var message = ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("Goal \ud83d\ude00")
+          .build())
+        .build())
+      .build();
+
+    var bytes = streaming.encode(message);
+
+    assertEquals(39, bytes.length);
+    assertEquals("{\"aps\":{\"alert\":{\"title\":\"Goal \ud83d\ude00\"}}}",
+      new String(bytes, StandardCharsets.UTF_8));
+    assertSameBytes(message);
+  }
+
+  @Test
+  @DisplayName("Should replace lone surrogates like Jackson does")
+  void encodeLoneSurrogates() throws IOException {
+    var message = ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("a\ud83db\ude00 \ud83d")
+          .build())
+        .build())
+      .build();
+
+    assertEquals("{\"aps\":{\"alert\":{\"title\":\"a?b? ?\"}}}",
+      new String(streaming.encode(message), StandardCharsets.UTF_8));
+    assertSameBytes(message);
+  }
+
+  @Test
+  @DisplayName("Should encode messages without aps")
+  void encodeEmpty() throws IOException {
+    assertSameBytes(ApnsMessage.builder().setToken("token").build());
+    assertSameBytes(ApnsMessage.builder().setToken("token").putData("only", "data").build());
+    assertSameBytes(ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder().setAlert(Alert.builder().build()).build())
+      .build());
+  }
+
+  @Test
+  @DisplayName("Should encode payloads bigger than the initial buffer")
+  void encodeLarge() throws IOException {
+    assertSameBytes(ApnsMessage.builder()
+      .setToken("token")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setBody("\u00e9".repeat(10_000))
+          .build())
+        .build())
+      .build());
+  }
+
+  private void assertSameBytes(ApnsMessage message) throws IOException {
+    assertArrayEquals(jackson.encode(message), streaming.encode(message));
+  }
+}
@@ -0,0 +1,92 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrioritySchedulerTest {
+
+  @Test
+  @DisplayName("Should keep the reserved streams for immediate notifications")
+  void reserveForImmediate() {
+    var started = new ArrayList<ApnsMessage.Priority>();
+    var pending = new ArrayList<CompletableFuture<ApnsResponse>>();
+    var scheduler = new PriorityScheduler(4, 1, 4, null, ApnsMetrics.NOOP);
+
+    for (var i = 0; i < 10; i++) {
+      submit(scheduler, ApnsMessage.Priority.THROTTLED, started, pending);
+    }
+
+    assertEquals(3, scheduler.getInFlight());
+    assertEquals(7, scheduler.getQueued(ApnsMessage.Priority.THROTTLED));
+
+    submit(scheduler, ApnsMessage.Priority.IMMEDIATE, started, pending);
+
+    assertEquals(4, scheduler.getInFlight());
+    assertEquals(ApnsMessage.Priority.IMMEDIATE, started.get(3));
+  }
+
+  @Test
+  @DisplayName("Should start immediate and throttled notifications weighted fair")
+  void weightedFair() {
+    var started = new ArrayList<ApnsMessage.Priority>();
+    var pending = new ArrayList<CompletableFuture<ApnsResponse>>();
+    var scheduler = new PriorityScheduler(1, 0, 2, null, ApnsMetrics.NOOP);
+
+    submit(scheduler, ApnsMessage.Priority.THROTTLED, started, pending);
+    for (var i = 0; i < 6; i++) {
+      submit(scheduler, ApnsMessage.Priority.IMMEDIATE, started, pending);
+      submit(scheduler, ApnsMessage.Priority.THROTTLED, started, pending);
+    }
+
+    while (started.size() < 13) {
+      pending.get(started.size() - 1).complete(new ApnsResponse(200, null, null, null));
+    }
+
+    assertEquals(List.of(
+      ApnsMessage.Priority.THROTTLED,
+      ApnsMessage.Priority.IMMEDIATE, ApnsMessage.Priority.IMMEDIATE, ApnsMessage.Priority.THROTTLED,
+      ApnsMessage.Priority.IMMEDIATE, ApnsMessage.Priority.IMMEDIATE, ApnsMessage.Priority.THROTTLED,
+      ApnsMessage.Priority.IMMEDIATE, ApnsMessage.Priority.IMMEDIATE, ApnsMessage.Priority.THROTTLED,
+      ApnsMessage.Priority.THROTTLED, ApnsMessage.Priority.THROTTLED, ApnsMessage.Priority.THROTTLED),
+      started);
+  }
+
+  @Test
+  @DisplayName("Should report the time spent waiting per lane")
+  void reportQueueWait() throws InterruptedException {
+    var metrics = new InMemoryApnsMetrics();
+    var pending = new ArrayList<CompletableFuture<ApnsResponse>>();
+    var scheduler = new PriorityScheduler(1, 0, 4, null, metrics);
+
+    submit(scheduler, ApnsMessage.Priority.IMMEDIATE, new ArrayList<>(), pending);
+    submit(scheduler, ApnsMessage.Priority.THROTTLED, new ArrayList<>(), pending);
+
+    Thread.sleep(20);
+    pending.get(0).complete(new ApnsResponse(200, null, null, null));
+
+    assertTrue(metrics.getQueueWait(ApnsMessage.Priority.THROTTLED, 100).toMillis() >= 15);
+    assertTrue(metrics.getQueueWait(ApnsMessage.Priority.IMMEDIATE, 100).toMillis() < 15);
+  }
+
+  static void submit(PriorityScheduler scheduler, ApnsMessage.Priority priority,
+                     List<ApnsMessage.Priority> started, List<CompletableFuture<ApnsResponse>> pending) {
+    var message = ApnsMessage.builder()
+      .setToken("a1b2c3")
+      .setPriority(priority)
+      .build();
+
+    scheduler.submit(message, () -> {
+      var future = new CompletableFuture<ApnsResponse>();
+      started.add(priority);
+      pending.add(future);
+      return future;
+    });
+  }
+}
@@ -0,0 +1,36 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProviderTokenTest {
+
+  @Test
+  @DisplayName("Should generate the token on creation")
+  void generateOnCreation() throws Exception {
+    try (var providerToken = new ProviderToken(ApnsKeys.readKey(), TokenSigner.jjwt(), null)) {
+      assertNotNull(providerToken.get());
+      assertEquals(1, providerToken.getRefreshCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should notify the listener on every refresh")
+  void notifyOnRefresh() throws Exception {
+    var notified = new AtomicLong();
+
+    try (var providerToken = new ProviderToken(ApnsKeys.readKey(), TokenSigner.jjwt(), (count, elapsed) -> notified.set(count))) {
+      providerToken.refresh();
+
+      assertEquals(2, notified.get());
+      assertEquals(2, providerToken.getRefreshCount());
+      assertTrue(providerToken.getRefreshTime().toNanos() > 0);
+    }
+  }
+}
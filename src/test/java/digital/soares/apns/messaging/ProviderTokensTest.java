@@ -0,0 +1,39 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ProviderTokensTest {
+
+  @Test
+  @DisplayName("Should share the token of keys with the same team id and key id")
+  void shareTokenPerKeyId() throws Exception {
+    try (var providerTokens = new ProviderTokens(TokenSigner.jjwt(), null)) {
+      var first = ApnsKeys.readKey("A1B2C3D4F5", "TEAM000001");
+      var same = ApnsKeys.readKey("A1B2C3D4F5", "TEAM000001");
+      var other = ApnsKeys.readKey("A1B2C3D4F5", "TEAM000002");
+
+      assertSame(providerTokens.get(first), providerTokens.get(same));
+      assertNotSame(providerTokens.get(first), providerTokens.get(other));
+      assertEquals(2, providerTokens.size());
+      assertEquals(2, providerTokens.getRefreshCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should find the keys already used")
+  void findUsedKeys() throws Exception {
+    try (var providerTokens = new ProviderTokens(TokenSigner.jjwt(), null)) {
+      var apnsKey = ApnsKeys.readKey("A1B2C3D4F5", "TEAM000001");
+      providerTokens.get(apnsKey);
+
+      assertSame(apnsKey, providerTokens.find("TEAM000001", "A1B2C3D4F5"));
+      assertNull(providerTokens.find("TEAM000002", "A1B2C3D4F5"));
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+  @Test
+  @DisplayName("Should admit the burst right away and reject the rest")
+  void admitBurst() {
+    try (var rateLimiter = new RateLimiter(RateLimit.of(1, 5))) {
+      for (var i = 0; i < 5; i++) {
+        assertEquals(0, rateLimiter.acquire("topic", 0));
+      }
+
+      assertEquals(RateLimiter.REJECTED, rateLimiter.acquire("topic", 0));
+      assertEquals(0, rateLimiter.acquire("other", 0));
+    }
+  }
+
+  @Test
+  @DisplayName("Should delay beyond the burst at the sustained rate")
+  void delayBeyondBurst() {
+    try (var rateLimiter = new RateLimiter(RateLimit.of(10, 1))) {
+      var maxDelay = TimeUnit.SECONDS.toNanos(1);
+
+      assertEquals(0, rateLimiter.acquire("topic", maxDelay));
+
+      var delay = rateLimiter.acquire("topic", maxDelay);
+      assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(90) && delay <= TimeUnit.MILLISECONDS.toNanos(100));
+
+      var nextDelay = rateLimiter.acquire("topic", maxDelay);
+      assertTrue(nextDelay > TimeUnit.MILLISECONDS.toNanos(190) && nextDelay <= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+  }
+
+  @Test
+  @DisplayName("Should admit again once a permit is given back")
+  void releasePermit() {
+    try (var rateLimiter = new RateLimiter(RateLimit.of(1, 1))) {
+      assertEquals(0, rateLimiter.acquire("topic", 0));
+      assertEquals(RateLimiter.REJECTED, rateLimiter.acquire("topic", 0));
+
+      rateLimiter.release("topic");
+
+      assertEquals(0, rateLimiter.acquire("topic", 0));
+    }
+  }
+
+  @Test
+  @DisplayName("Should purge full buckets")
+  void purgeFullBuckets() throws InterruptedException {
+    try (var rateLimiter = new RateLimiter(RateLimit.of(1000, 1))) {
+      rateLimiter.acquire("device", 0);
+      Thread.sleep(5);
+      rateLimiter.purge();
+
+      assertEquals(0, rateLimiter.size());
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+  @Test
+  @DisplayName("Should retry only transient failures")
+  void retryTransientFailures() {
+    assertTrue(RetryPolicy.isRetryable(response(429), null));
+    assertTrue(RetryPolicy.isRetryable(response(500), null));
+    assertTrue(RetryPolicy.isRetryable(response(503), null));
+    assertTrue(RetryPolicy.isRetryable(null, new IOException("connection reset")));
+
+    assertFalse(RetryPolicy.isRetryable(response(200), null));
+    assertFalse(RetryPolicy.isRetryable(response(400), null));
+    assertFalse(RetryPolicy.isRetryable(response(403), null));
+    assertFalse(RetryPolicy.isRetryable(response(410), null));
+    assertFalse(RetryPolicy.isRetryable(null, new IllegalStateException()));
+  }
+
+  @Test
+  @DisplayName("Should keep the backoff under the ceiling")
+  void boundBackoff() {
+    var retryPolicy = RetryPolicy.builder()
+      .setInitialBackoff(Duration.ofMillis(100))
+      .setMaxBackoff(Duration.ofSeconds(1))
+      .build();
+
+    for (var i = 0; i < 1000; i++) {
+      assertTrue(retryPolicy.backoffNanos(1) <= Duration.ofMillis(100).toNanos());
+      assertTrue(retryPolicy.backoffNanos(3) <= Duration.ofMillis(400).toNanos());
+      assertTrue(retryPolicy.backoffNanos(50) <= Duration.ofSeconds(1).toNanos());
+    }
+  }
+
+  @Test
+  @DisplayName("Should use the max backoff when the exponential one overflows")
+  void clampOverflowingBackoff() {
+    // shifted 30 times, it wraps around to about one second
+    var retryPolicy = RetryPolicy.builder()
+      .setInitialBackoff(Duration.ofNanos((1L << 34) + 1))
+      .setMaxBackoff(Duration.ofDays(1))
+      .build();
+
+    var longest = 0L;
+    for (var i = 0; i < 100; i++) {
+      longest = Math.max(longest, retryPolicy.backoffNanos(31));
+    }
+
+    assertTrue(longest > Duration.ofMinutes(1).toNanos());
+    assertTrue(longest <= Duration.ofDays(1).toNanos());
+  }
+
+  @Test
+  @DisplayName("Should refuse backoffs and deadlines it can't compute with")
+  void rejectInvalidDurations() {
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder()
+      .setInitialBackoff(Duration.ofMillis(-1))
+      .build());
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder()
+      .setMaxBackoff(Duration.ofMillis(-1))
+      .build());
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder()
+      .setDeadline(Duration.ofMillis(-1))
+      .build());
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder()
+      .setInitialBackoff(Duration.ofSeconds(2))
+      .setMaxBackoff(Duration.ofSeconds(1))
+      .build());
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder()
+      .setMaxBackoff(Duration.ofNanos(Long.MAX_VALUE))
+      .build());
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder()
+      .setMaxBackoff(Duration.ofSeconds(Long.MAX_VALUE))
+      .build());
+  }
+
+  private static ApnsResponse response(int statusCode) {
+    return new ApnsResponse(statusCode, null, null, null);
+  }
+}
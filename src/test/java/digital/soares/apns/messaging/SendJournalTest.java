@@ -0,0 +1,185 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendJournalTest {
+
+  static final byte[] BODY = "{\"aps\":{\"alert\":\"Hello\"}}".getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Should recover only the notifications not acknowledged")
+  void recoverPending() throws IOException {
+    var id = UUID.randomUUID();
+
+    try (var journal = SendJournal.open(directory)) {
+      var acknowledged = journal.append(message("a1b2c3"), BODY).join();
+      journal.append(ApnsMessage.builder()
+        .setToken("d4e5f6")
+        .setTopic("topic")
+        .setId(id)
+        .setCollapseId("collapse")
+        .setExpiration(1588000000)
+        .setPriority(ApnsMessage.Priority.THROTTLED)
+        .setTimeout(Duration.ofMillis(250))
+        .build(), BODY).join();
+
+      journal.acknowledge(acknowledged);
+    }
+
+    try (var journal = SendJournal.open(directory)) {
+      assertEquals(1, journal.getRecovered().size());
+
+      var entry = journal.read(journal.getRecovered().get(0));
+      var message = entry.getMessage();
+
+      assertEquals("d4e5f6", message.getToken());
+      assertEquals("topic", message.getTopic());
+      assertEquals(id, message.getId());
+      assertEquals("collapse", message.getCollapseId());
+      assertEquals(1588000000, message.getExpiration());
+      assertEquals(ApnsMessage.Priority.THROTTLED, message.getPriority());
+      assertEquals(Duration.ofMillis(250), message.getTimeout());
+      assertArrayEquals(BODY, entry.getBody());
+    }
+  }
+
+  @Test
+  @DisplayName("Should journal the tenant key by its team id and key id")
+  void journalTenantKey() throws IOException {
+    try (var journal = SendJournal.open(directory)) {
+      journal.append(ApnsMessage.builder()
+        .setToken("a1b2c3")
+        .setApnsKey(ApnsKeys.readKey("F5D4C3B2A1", "TEAM000001"))
+        .build(), BODY).join();
+      journal.append(message("d4e5f6"), BODY).join();
+    }
+
+    try (var journal = SendJournal.open(directory)) {
+      var tenant = journal.read(journal.getRecovered().get(0));
+      var other = journal.read(journal.getRecovered().get(1));
+
+      assertEquals("TEAM000001", tenant.getTeamId());
+      assertEquals("F5D4C3B2A1", tenant.getKeyId());
+      assertNull(tenant.getMessage().getApnsKey());
+      assertNull(other.getKeyId());
+    }
+  }
+
+  @Test
+  @DisplayName("Should delete segments once all their notifications are acknowledged")
+  void deleteAcknowledgedSegments() throws IOException {
+    try (var journal = journal(16)) {
+      var sequences = new ArrayList<Long>();
+      for (var i = 0; i < 200; i++) {
+        sequences.add(journal.append(message(Integer.toHexString(i)), BODY).join());
+      }
+
+      assertTrue(journal.getSegmentCount() > 1);
+
+      sequences.forEach(journal::acknowledge);
+
+      assertEquals(1, journal.getSegmentCount());
+      assertEquals(0, journal.getPendingCount());
+      assertEquals(1, segmentFiles().size());
+    }
+  }
+
+  @Test
+  @DisplayName("Should compact pending notifications out of the oldest segments")
+  void compactOldestSegments() throws IOException {
+    try (var journal = journal(2)) {
+      var pending = journal.append(message("a1b2c3"), BODY).join();
+
+      for (var i = 0; i < 500; i++) {
+        journal.acknowledge(journal.append(message(Integer.toHexString(i)), BODY).join());
+      }
+
+      assertTrue(journal.getSegmentCount() <= 3);
+      assertTrue(Files.notExists(directory.resolve("0000000000.journal")));
+      assertEquals("a1b2c3", journal.read(pending).getMessage().getToken());
+    }
+
+    try (var journal = journal(2)) {
+      assertEquals(1, journal.getRecovered().size());
+      assertEquals("a1b2c3", journal.read(journal.getRecovered().get(0)).getMessage().getToken());
+    }
+  }
+
+  @Test
+  @DisplayName("Should stop recovering at a torn record")
+  void stopAtTornRecord() throws IOException {
+    try (var journal = SendJournal.open(directory)) {
+      journal.append(message("a1b2c3"), BODY).join();
+      journal.append(message("d4e5f6"), BODY).join();
+    }
+
+    var segment = segmentFiles().get(0);
+    try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      var length = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).getInt();
+      channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 4 + length + 4 + 20);
+    }
+
+    try (var journal = SendJournal.open(directory)) {
+      assertEquals(1, journal.getRecovered().size());
+      assertEquals("a1b2c3", journal.read(journal.getRecovered().get(0)).getMessage().getToken());
+
+      var next = journal.append(message("a7b8c9"), BODY).join();
+      assertTrue(next > journal.getRecovered().get(0));
+    }
+  }
+
+  @Test
+  @DisplayName("Should not read acknowledged notifications")
+  void readAcknowledged() throws IOException {
+    try (var journal = SendJournal.open(directory)) {
+      var sequence = journal.append(message("a1b2c3"), BODY).join();
+      journal.acknowledge(sequence);
+
+      assertNull(journal.read(sequence));
+    }
+  }
+
+  SendJournal journal(int maxSegments) throws IOException {
+    return SendJournal.builder()
+      .setDirectory(directory)
+      .setSegmentSize(4096)
+      .setMaxSegments(maxSegments)
+      .build();
+  }
+
+  List<Path> segmentFiles() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  static ApnsMessage message(String token) {
+    return ApnsMessage.builder()
+      .setToken(token)
+      .setTopic("topic")
+      .build();
+  }
+}
@@ -0,0 +1,189 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendProcessorTest {
+
+  @Test
+  @DisplayName("Should request from upstream only as slots free up")
+  void requestAsSlotsFreeUp() {
+    var pending = new LinkedHashMap<String, CompletableFuture<ApnsResponse>>();
+    var processor = new SendProcessor(message -> future(pending, message), 8, false);
+    var upstream = new Upstream();
+    var downstream = new Downstream(Long.MAX_VALUE);
+
+    processor.subscribe(downstream);
+    processor.onSubscribe(upstream);
+    assertEquals(8, upstream.requested.get());
+
+    for (var i = 0; i < 8; i++) {
+      processor.onNext(message("token" + i));
+    }
+
+    pending.remove("token0").complete(response(200));
+    assertEquals(8, upstream.requested.get());
+
+    pending.remove("token1").complete(response(200));
+    assertEquals(10, upstream.requested.get());
+    assertEquals(2, downstream.results.size());
+  }
+
+  @Test
+  @DisplayName("Should keep results waiting for downstream demand")
+  void waitForDemand() {
+    var pending = new LinkedHashMap<String, CompletableFuture<ApnsResponse>>();
+    var processor = new SendProcessor(message -> future(pending, message), 4, false);
+    var upstream = new Upstream();
+    var downstream = new Downstream(1);
+
+    processor.subscribe(downstream);
+    processor.onSubscribe(upstream);
+
+    for (var i = 0; i < 4; i++) {
+      processor.onNext(message("token" + i));
+    }
+
+    new ArrayList<>(pending.values()).forEach(future -> future.complete(response(200)));
+
+    assertEquals(1, downstream.results.size());
+    assertEquals(5, upstream.requested.get());
+
+    downstream.subscription.request(3);
+
+    assertEquals(4, downstream.results.size());
+    assertEquals(8, upstream.requested.get());
+  }
+
+  @Test
+  @DisplayName("Should publish results in completion order and then complete")
+  void publishInCompletionOrder() {
+    var pending = new LinkedHashMap<String, CompletableFuture<ApnsResponse>>();
+    var processor = new SendProcessor(message -> future(pending, message), 8, false);
+    var downstream = new Downstream(Long.MAX_VALUE);
+
+    processor.subscribe(downstream);
+    processor.onSubscribe(new Upstream());
+    processor.onNext(message("a1b2c3"));
+    processor.onNext(message("d4e5f6"));
+    processor.onComplete();
+
+    pending.remove("d4e5f6").complete(response(200));
+    assertFalse(downstream.completed);
+
+    pending.remove("a1b2c3").completeExceptionally(new IllegalStateException());
+
+    assertEquals(List.of("d4e5f6", "a1b2c3"), tokens(downstream.results));
+    assertFalse(downstream.results.get(1).isSuccessful());
+    assertTrue(downstream.completed);
+  }
+
+  @Test
+  @DisplayName("Should send messages to the same device one at a time")
+  void orderPerDevice() {
+    var pending = new LinkedHashMap<String, CompletableFuture<ApnsResponse>>();
+    var sent = new ArrayList<ApnsMessage>();
+    var processor = new SendProcessor(message -> {
+      sent.add(message);
+      return future(pending, message);
+    }, 8, true);
+    var downstream = new Downstream(Long.MAX_VALUE);
+
+    processor.subscribe(downstream);
+    processor.onSubscribe(new Upstream());
+
+    var first = message("a1b2c3");
+    var second = message("a1b2c3");
+    processor.onNext(first);
+    processor.onNext(second);
+    processor.onNext(message("d4e5f6"));
+
+    assertEquals(2, sent.size());
+
+    pending.remove("a1b2c3").complete(response(200));
+
+    assertEquals(3, sent.size());
+    assertSame(second, sent.get(2));
+  }
+
+  static CompletableFuture<ApnsResponse> future(Map<String, CompletableFuture<ApnsResponse>> pending,
+                                                ApnsMessage message) {
+    var future = new CompletableFuture<ApnsResponse>();
+    pending.put(message.getToken(), future);
+    return future;
+  }
+
+  static ApnsMessage message(String token) {
+    return ApnsMessage.builder().setToken(token).build();
+  }
+
+  static ApnsResponse response(int statusCode) {
+    return new ApnsResponse(statusCode, null, null, null);
+  }
+
+  static List<String> tokens(List<SendResult> results) {
+    return results.stream()
+      .map(result -> result.getMessage().getToken())
+      .collect(Collectors.toList());
+  }
+
+  static class Upstream implements Flow.Subscription {
+
+    final AtomicLong requested = new AtomicLong();
+
+    @Override
+    public void request(long n) {
+      requested.addAndGet(n);
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+
+  static class Downstream implements Flow.Subscriber<SendResult> {
+
+    final List<SendResult> results = new ArrayList<>();
+    final long initialDemand;
+    Flow.Subscription subscription;
+    boolean completed;
+
+    Downstream(long initialDemand) {
+      this.initialDemand = initialDemand;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(initialDemand);
+    }
+
+    @Override
+    public void onNext(SendResult item) {
+      results.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenSignerTest {
+
+  @Test
+  @DisplayName("Should sign tokens verifiable with the public key")
+  void signVerifiableTokens() throws Exception {
+    var keyPair = generateKeyPair();
+    var apnsKey = ApnsKey.of(Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()),
+      "A1B2C3D4F5", "TEAM000001");
+
+    for (var i = 0; i < 20; i++) {
+      var parts = TokenSigner.builtIn().sign(apnsKey, 1588000000).split("\\.");
+
+      assertEquals("{\"alg\":\"ES256\",\"kid\":\"A1B2C3D4F5\"}", decode(parts[0]));
+      assertEquals("{\"iss\":\"TEAM000001\",\"iat\":1588000000}", decode(parts[1]));
+
+      var signature = Signature.getInstance("SHA256withECDSAinP1363Format");
+      signature.initVerify(keyPair.getPublic());
+      signature.update((parts[0] + '.' + parts[1]).getBytes(StandardCharsets.US_ASCII));
+
+      assertTrue(signature.verify(Base64.getUrlDecoder().decode(parts[2])));
+    }
+  }
+
+  @Test
+  @DisplayName("Should pad short integers and strip sign bytes when converting from DER")
+  void convertFromDer() throws SignatureException {
+    var r = new byte[33];
+    r[1] = (byte) 0x80;
+    r[32] = 1;
+    var s = new byte[31];
+    s[0] = 0x7F;
+    s[30] = 2;
+
+    var der = new byte[2 + 2 + r.length + 2 + s.length];
+    der[0] = 0x30;
+    der[1] = (byte) (der.length - 2);
+    der[2] = 0x02;
+    der[3] = (byte) r.length;
+    System.arraycopy(r, 0, der, 4, r.length);
+    der[4 + r.length] = 0x02;
+    der[5 + r.length] = (byte) s.length;
+    System.arraycopy(s, 0, der, 6 + r.length, s.length);
+
+    var jose = Es256TokenSigner.toJose(der);
+
+    var expected = new byte[64];
+    System.arraycopy(r, 1, expected, 0, 32);
+    System.arraycopy(s, 0, expected, 33, 31);
+
+    assertArrayEquals(expected, jose);
+  }
+
+  @Test
+  @DisplayName("Should refuse malformed DER signatures")
+  void refuseMalformedDer() {
+    assertThrows(SignatureException.class, () -> Es256TokenSigner.toJose(new byte[] {0x30, 6, 2, 1, 1, 2, 9, 1}));
+    assertThrows(SignatureException.class, () -> Es256TokenSigner.toJose(new byte[] {0x31, 6, 2, 1, 1, 2, 1, 1}));
+  }
+
+  static KeyPair generateKeyPair() throws Exception {
+    var generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    return generator.generateKeyPair();
+  }
+
+  static String decode(String part) {
+    return new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+  }
+}
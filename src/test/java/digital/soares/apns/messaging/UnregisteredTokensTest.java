@@ -0,0 +1,88 @@
+package digital.soares.apns.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UnregisteredTokensTest {
+
+  private static final String TOKEN = "5b2a1c7f0e3d4a6b8c9d0e1f2a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d";
+
+  @Test
+  @DisplayName("Should keep the latest invalidation timestamp")
+  void keepLatestTimestamp() {
+    var notified = new AtomicInteger();
+    var unregisteredTokens = UnregisteredTokens.builder()
+      .setListener((token, timestamp) -> notified.incrementAndGet())
+      .build();
+
+    unregisteredTokens.unregister(TOKEN, Instant.ofEpochMilli(2000));
+    unregisteredTokens.unregister(TOKEN.toUpperCase(), Instant.ofEpochMilli(1000));
+
+    assertTrue(unregisteredTokens.isUnregistered(TOKEN));
+    assertEquals(Instant.ofEpochMilli(2000), unregisteredTokens.getTimestamp(TOKEN));
+    assertEquals(1, notified.get());
+  }
+
+  @Test
+  @DisplayName("Should revalidate only tokens registered after the invalidation")
+  void revalidateAfterTimestamp() {
+    var unregisteredTokens = UnregisteredTokens.builder().build();
+    unregisteredTokens.unregister(TOKEN, Instant.ofEpochMilli(2000));
+
+    assertFalse(unregisteredTokens.register(TOKEN, Instant.ofEpochMilli(1500)));
+    assertTrue(unregisteredTokens.isUnregistered(TOKEN));
+
+    assertTrue(unregisteredTokens.register(TOKEN, Instant.ofEpochMilli(2500)));
+    assertFalse(unregisteredTokens.isUnregistered(TOKEN));
+  }
+
+  @Test
+  @DisplayName("Should answer through the Bloom filter")
+  void answerThroughBloomFilter() {
+    var unregisteredTokens = UnregisteredTokens.builder()
+      .setBloomFilter(true)
+      .setExpectedTokens(10)
+      .build();
+
+    unregisteredTokens.unregister(TOKEN, Instant.ofEpochMilli(1000));
+
+    assertTrue(unregisteredTokens.isUnregistered(TOKEN));
+    assertFalse(unregisteredTokens.isUnregistered(TOKEN.replace('5', '6')));
+    assertNull(unregisteredTokens.getTimestamp("not a token"));
+  }
+
+  @Test
+  @DisplayName("Should keep the token when the listener fails")
+  void ignoreFailingListener() {
+    var unregisteredTokens = UnregisteredTokens.builder()
+      .setListener((token, timestamp) -> {
+        throw new IllegalStateException("store is down");
+      })
+      .build();
+
+    unregisteredTokens.unregister(TOKEN, Instant.ofEpochMilli(1000));
+
+    assertTrue(unregisteredTokens.isUnregistered(TOKEN));
+  }
+
+  @Test
+  @DisplayName("Should accept only ASCII hex digits")
+  void rejectNonAsciiDigits() {
+    var unregisteredTokens = UnregisteredTokens.builder().build();
+    // Arabic-Indic digits, which Character.digit takes as 1 and 2
+    var token = "\u0661\u0662";
+
+    unregisteredTokens.unregister(token, Instant.ofEpochMilli(1000));
+
+    assertEquals(0, unregisteredTokens.size());
+    assertFalse(unregisteredTokens.isUnregistered(token));
+  }
+}
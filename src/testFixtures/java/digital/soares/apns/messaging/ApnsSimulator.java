@@ -0,0 +1,646 @@
+package digital.soares.apns.messaging;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2GoAwayFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.ReferenceCountUtil;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for Apple's APNS service, speaking HTTP/2
+ * over TLS with a self-signed certificate for {@code localhost}.
+ * Like APNS, it validates the path, the topic, the payload size and
+ * the bearer provider token, whose signature is verified against the
+ * keys added with {@link Builder#addProviderKey}. Responses can be
+ * delayed following a {@link Latency} distribution and replaced by
+ * injected {@link Fault faults}, either for a given device token or
+ * at random for a share of the requests.
+ *
+ * <p>Clients must trust the certificate, see {@link #clientSslContext()}.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class ApnsSimulator implements AutoCloseable {
+
+  private static final char[] KEY_STORE_PASSWORD = "changeit".toCharArray();
+  private static final String DEVICE_PATH = "/3/device/";
+  private static final int MAX_PAYLOAD_SIZE = 4096;
+  private static final long TOKEN_TTL = TimeUnit.HOURS.toSeconds(1);
+  private static final int MAX_VERIFIED_TOKENS = 1024;
+
+  private static final Pattern ALG = fieldPattern("alg");
+  private static final Pattern KID = fieldPattern("kid");
+  private static final Pattern ISS = fieldPattern("iss");
+  private static final Pattern IAT = fieldPattern("iat");
+
+  private final Latency latency;
+  private final Map<String, PublicKey> providerKeys;
+  private final Map<String, Fault> tokenFaults;
+  private final List<Fault> faults;
+  private final List<Double> probabilities;
+  private final Map<String, Long> verifiedTokens = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger activeStreams = new AtomicInteger();
+  private final AtomicInteger peakStreams = new AtomicInteger();
+  private final EventLoopGroup group;
+  private final Channel channel;
+
+  private ApnsSimulator(Builder builder) {
+    this.latency = builder.latency;
+    this.providerKeys = Map.copyOf(builder.providerKeys);
+    this.tokenFaults = Map.copyOf(builder.tokenFaults);
+    this.faults = List.copyOf(builder.faults);
+    this.probabilities = List.copyOf(builder.probabilities);
+
+    var sslContext = createSslContext();
+    var settings = Http2Settings.defaultSettings().maxConcurrentStreams(builder.maxConcurrentStreams);
+
+    this.group = new NioEventLoopGroup();
+    this.channel = new ServerBootstrap()
+      .group(group)
+      .channel(NioServerSocketChannel.class)
+      .childHandler(new ChannelInitializer<SocketChannel>() {
+        @Override
+        protected void initChannel(SocketChannel channel) {
+          connections.incrementAndGet();
+          channel.pipeline().addLast(
+            sslContext.newHandler(channel.alloc()),
+            Http2FrameCodecBuilder.forServer().initialSettings(settings).build(),
+            new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+              @Override
+              protected void initChannel(Channel stream) {
+                stream.pipeline().addLast(new StreamHandler());
+              }
+            }));
+        }
+      })
+      .bind(InetAddress.getLoopbackAddress(), 0)
+      .syncUninterruptibly()
+      .channel();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Creates a simulator answering every valid request with {@code 200}.
+   *
+   * @return a running {@link ApnsSimulator}
+   */
+  public static ApnsSimulator start() {
+    return builder().build();
+  }
+
+  /**
+   * Creates a client context trusting the self-signed certificate of
+   * the simulator, to be given to {@link ApnsMessaging.Builder#setSslContext}.
+   *
+   * @return a new {@link SSLContext}
+   */
+  public static SSLContext clientSslContext() {
+    try {
+      var trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(loadKeyStore());
+
+      var sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+      return sslContext;
+    } catch (IOException | GeneralSecurityException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Gets the environment pointing to this simulator.
+   *
+   * @return an {@link Environment} for the simulator
+   */
+  public Environment environment() {
+    var url = "https://localhost:" + getPort() + DEVICE_PATH;
+    return token -> URI.create(url + token);
+  }
+
+  public int getPort() {
+    return ((InetSocketAddress) channel.localAddress()).getPort();
+  }
+
+  /**
+   * Gets how many requests were received, including the rejected ones.
+   *
+   * @return the number of requests
+   */
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  /**
+   * Gets how many connections were accepted.
+   *
+   * @return the number of connections
+   */
+  public int getConnectionCount() {
+    return connections.get();
+  }
+
+  /**
+   * Gets the highest number of streams awaiting a response at the
+   * same time, across all connections.
+   *
+   * @return the peak of concurrent streams
+   */
+  public int getPeakConcurrentStreams() {
+    return peakStreams.get();
+  }
+
+  @Override
+  public void close() {
+    channel.close().syncUninterruptibly();
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+  }
+
+  private Fault evaluate(Http2Headers headers, int length) {
+    if (headers.method() == null || !"POST".contentEquals(headers.method())) {
+      return Fault.of(405, "MethodNotAllowed");
+    }
+
+    var path = headers.path() == null ? "" : headers.path().toString();
+    if (!path.startsWith(DEVICE_PATH) || path.length() == DEVICE_PATH.length()) {
+      return Fault.of(404, "BadPath");
+    }
+
+    var tokenReason = verifyProviderToken(headers.get("authorization"));
+    if (tokenReason != null) {
+      return Fault.of(403, tokenReason);
+    }
+
+    if (headers.get("apns-topic") == null) {
+      return Fault.of(400, "MissingTopic");
+    }
+
+    if (length == 0) {
+      return Fault.of(400, "PayloadEmpty");
+    }
+
+    if (length > MAX_PAYLOAD_SIZE) {
+      return Fault.of(413, "PayloadTooLarge");
+    }
+
+    var tokenFault = tokenFaults.get(path.substring(DEVICE_PATH.length()));
+    if (tokenFault != null) {
+      return tokenFault;
+    }
+
+    var sample = ThreadLocalRandom.current().nextDouble();
+    for (var i = 0; i < faults.size(); i++) {
+      sample -= probabilities.get(i);
+      if (sample < 0) {
+        return faults.get(i);
+      }
+    }
+
+    return null;
+  }
+
+  private String verifyProviderToken(CharSequence authorization) {
+    if (authorization == null) {
+      return "MissingProviderToken";
+    }
+
+    var value = authorization.toString();
+    if (!value.regionMatches(true, 0, "bearer ", 0, 7)) {
+      return "InvalidProviderToken";
+    }
+
+    var token = value.substring(7);
+    var issuedAt = verifiedTokens.get(token);
+    if (issuedAt == null) {
+      issuedAt = verify(token);
+      if (issuedAt == null) {
+        return "InvalidProviderToken";
+      }
+
+      if (verifiedTokens.size() >= MAX_VERIFIED_TOKENS) {
+        verifiedTokens.clear();
+      }
+
+      verifiedTokens.put(token, issuedAt);
+    }
+
+    if (Instant.now().getEpochSecond() - issuedAt > TOKEN_TTL) {
+      return "ExpiredProviderToken";
+    }
+
+    return null;
+  }
+
+  /**
+   * Verifies a provider token, checking its signature when provider
+   * keys were added.
+   *
+   * @return the issued at claim, or {@code null} when the token is invalid
+   */
+  private Long verify(String token) {
+    var parts = token.split("\\.", -1);
+    if (parts.length != 3) {
+      return null;
+    }
+
+    try {
+      var decoder = Base64.getUrlDecoder();
+      var header = new String(decoder.decode(parts[0]), StandardCharsets.UTF_8);
+      var claims = new String(decoder.decode(parts[1]), StandardCharsets.UTF_8);
+      var keyId = field(header, KID);
+      var teamId = field(claims, ISS);
+      var issuedAt = field(claims, IAT);
+
+      if (!"ES256".equals(field(header, ALG)) || keyId == null || teamId == null || issuedAt == null) {
+        return null;
+      }
+
+      if (!providerKeys.isEmpty()) {
+        var publicKey = providerKeys.get(teamId + '.' + keyId);
+        if (publicKey == null) {
+          return null;
+        }
+
+        var signature = Signature.getInstance("SHA256withECDSAinP1363Format");
+        signature.initVerify(publicKey);
+        signature.update((parts[0] + '.' + parts[1]).getBytes(StandardCharsets.US_ASCII));
+
+        if (!signature.verify(decoder.decode(parts[2]))) {
+          return null;
+        }
+      }
+
+      return Long.parseLong(issuedAt);
+    } catch (IllegalArgumentException | GeneralSecurityException e) {
+      return null;
+    }
+  }
+
+  private void respond(ChannelHandlerContext context, String apnsId, Fault fault) {
+    activeStreams.decrementAndGet();
+
+    if (!context.channel().isActive()) {
+      return;
+    }
+
+    if (fault != null && fault.drain) {
+      context.channel().parent()
+        .writeAndFlush(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR,
+          Unpooled.copiedBuffer(fault.body(), StandardCharsets.UTF_8)));
+      fault = null;
+    }
+
+    if (fault == null) {
+      var headers = new DefaultHttp2Headers()
+        .status("200")
+        .add("apns-id", apnsId);
+
+      context.writeAndFlush(new DefaultHttp2HeadersFrame(headers, true));
+      return;
+    }
+
+    var body = Unpooled.copiedBuffer(fault.body(), StandardCharsets.UTF_8);
+    if (fault.goAway) {
+      context.channel().parent()
+        .writeAndFlush(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR, body))
+        .addListener(ChannelFutureListener.CLOSE);
+      return;
+    }
+
+    var headers = new DefaultHttp2Headers()
+      .status(Integer.toString(fault.status))
+      .add("apns-id", apnsId)
+      .add("content-type", "application/json");
+
+    context.write(new DefaultHttp2HeadersFrame(headers));
+    context.writeAndFlush(new DefaultHttp2DataFrame(body, true));
+  }
+
+  private static Pattern fieldPattern(String name) {
+    return Pattern.compile("\"" + name + "\"\\s*:\\s*\"?([^\",}]*)");
+  }
+
+  private static String field(String json, Pattern pattern) {
+    var matcher = pattern.matcher(json);
+    return matcher.find() ? matcher.group(1).trim() : null;
+  }
+
+  private static KeyStore loadKeyStore() throws IOException, GeneralSecurityException {
+    try (InputStream resource = ApnsSimulator.class.getResourceAsStream("/localhost.p12")) {
+      var keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(resource, KEY_STORE_PASSWORD);
+      return keyStore;
+    }
+  }
+
+  private static SslContext createSslContext() {
+    try {
+      var keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagerFactory.init(loadKeyStore(), KEY_STORE_PASSWORD);
+
+      return SslContextBuilder.forServer(keyManagerFactory)
+        .sslProvider(SslProvider.JDK)
+        .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+        .applicationProtocolConfig(new ApplicationProtocolConfig(
+          ApplicationProtocolConfig.Protocol.ALPN,
+          ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+          ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+          ApplicationProtocolNames.HTTP_2))
+        .build();
+    } catch (IOException | GeneralSecurityException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Handles a single stream, gathering the request until its end and
+   * then answering it, possibly after a delay.
+   */
+  private class StreamHandler extends ChannelInboundHandlerAdapter {
+
+    private Http2Headers headers;
+    private int length;
+
+    @Override
+    public void channelRead(ChannelHandlerContext context, Object message) {
+      try {
+        if (message instanceof Http2HeadersFrame && headers == null) {
+          var frame = (Http2HeadersFrame) message;
+          headers = frame.headers();
+          peakStreams.accumulateAndGet(activeStreams.incrementAndGet(), Math::max);
+
+          if (frame.isEndStream()) {
+            onEndOfRequest(context);
+          }
+        } else if (message instanceof Http2DataFrame && headers != null) {
+          var frame = (Http2DataFrame) message;
+          length += frame.content().readableBytes();
+
+          if (frame.isEndStream()) {
+            onEndOfRequest(context);
+          }
+        }
+      } finally {
+        ReferenceCountUtil.release(message);
+      }
+    }
+
+    private void onEndOfRequest(ChannelHandlerContext context) {
+      requests.increment();
+
+      var requestId = headers.get("apns-id");
+      var apnsId = requestId != null ? requestId.toString() : UUID.randomUUID().toString();
+      var fault = evaluate(headers, length);
+      var delay = latency.nextNanos();
+
+      if (delay > 0) {
+        context.executor().schedule(() -> respond(context, apnsId, fault), delay, TimeUnit.NANOSECONDS);
+      } else {
+        respond(context, apnsId, fault);
+      }
+    }
+  }
+
+  /**
+   * Draws the delay before each response is written.
+   */
+  @FunctionalInterface
+  public interface Latency {
+
+    long nextNanos();
+
+    static Latency none() {
+      return () -> 0;
+    }
+
+    static Latency fixed(Duration delay) {
+      var nanos = delay.toNanos();
+      return () -> nanos;
+    }
+
+    /**
+     * Delays evenly distributed between {@code min} and {@code max}.
+     */
+    static Latency uniform(Duration min, Duration max) {
+      var minNanos = min.toNanos();
+      var maxNanos = max.toNanos();
+
+      if (maxNanos < minNanos) {
+        throw new IllegalArgumentException("Max latency must not be lower than min latency");
+      }
+
+      return () -> minNanos + ThreadLocalRandom.current().nextLong(maxNanos - minNanos + 1);
+    }
+
+    /**
+     * Delays exponentially distributed around {@code mean}, giving the
+     * long tail seen on real networks.
+     */
+    static Latency exponential(Duration mean) {
+      var meanNanos = mean.toNanos();
+      return () -> (long) (-meanNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+  }
+
+  /**
+   * An error answer replacing the successful one. {@link #goAway()}
+   * closes the whole connection instead, leaving its streams
+   * unanswered, and {@link #drain()} only announces it.
+   */
+  public static final class Fault {
+
+    private final int status;
+    private final String reason;
+    private final boolean goAway;
+    private final boolean drain;
+
+    private Fault(int status, String reason, boolean goAway, boolean drain) {
+      this.status = status;
+      this.reason = reason;
+      this.goAway = goAway;
+      this.drain = drain;
+    }
+
+    public static Fault of(int status, String reason) {
+      Objects.requireNonNull(reason, "Reason must not be null");
+      return new Fault(status, reason, false, false);
+    }
+
+    public static Fault badDeviceToken() {
+      return of(400, "BadDeviceToken");
+    }
+
+    public static Fault unregistered() {
+      return of(410, "Unregistered");
+    }
+
+    public static Fault tooManyRequests() {
+      return of(429, "TooManyRequests");
+    }
+
+    public static Fault internalServerError() {
+      return of(500, "InternalServerError");
+    }
+
+    public static Fault serviceUnavailable() {
+      return of(503, "ServiceUnavailable");
+    }
+
+    /**
+     * Sends a {@code GOAWAY} frame and closes the connection, as APNS
+     * does when shutting down a server.
+     */
+    public static Fault goAway() {
+      return new Fault(0, "Shutdown", true, false);
+    }
+
+    /**
+     * Sends a {@code GOAWAY} frame but keeps the connection open and
+     * answers the stream, as a server draining its connections does.
+     */
+    public static Fault drain() {
+      return new Fault(0, "Shutdown", false, true);
+    }
+
+    private String body() {
+      return status == 410
+        ? "{\"reason\":\"" + reason + "\",\"timestamp\":" + System.currentTimeMillis() + "}"
+        : "{\"reason\":\"" + reason + "\"}";
+    }
+  }
+
+  public static class Builder {
+
+    private int maxConcurrentStreams = 1000;
+    private Latency latency = Latency.none();
+    private final Map<String, PublicKey> providerKeys = new HashMap<>();
+    private final Map<String, Fault> tokenFaults = new HashMap<>();
+    private final List<Fault> faults = new ArrayList<>();
+    private final List<Double> probabilities = new ArrayList<>();
+
+    public Builder setMaxConcurrentStreams(int maxConcurrentStreams) {
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+    }
+
+    public Builder setLatency(Latency latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    /**
+     * Adds a key allowed to sign provider tokens. Without any key,
+     * tokens are only checked for their shape and age.
+     */
+    public Builder addProviderKey(String teamId, String keyId, PublicKey publicKey) {
+      Objects.requireNonNull(teamId, "Team id must not be null");
+      Objects.requireNonNull(keyId, "Key id must not be null");
+      Objects.requireNonNull(publicKey, "Public key must not be null");
+
+      providerKeys.put(teamId + '.' + keyId, publicKey);
+      return this;
+    }
+
+    public Builder addProviderKey(ApnsKeyPair keyPair) {
+      var apnsKey = keyPair.getApnsKey();
+      return addProviderKey(apnsKey.getTeamId(), apnsKey.getKeyId(), keyPair.getPublicKey());
+    }
+
+    /**
+     * Answers every request to {@code token} with {@code fault}.
+     */
+    public Builder injectFault(String token, Fault fault) {
+      Objects.requireNonNull(token, "Token must not be null");
+      Objects.requireNonNull(fault, "Fault must not be null");
+
+      tokenFaults.put(token, fault);
+      return this;
+    }
+
+    /**
+     * Answers a random share of the requests with {@code fault}.
+     *
+     * @param probability the share of requests, between 0 and 1
+     */
+    public Builder injectFault(Fault fault, double probability) {
+      Objects.requireNonNull(fault, "Fault must not be null");
+
+      if (probability < 0 || probability > 1) {
+        throw new IllegalArgumentException("Probability must be between 0 and 1");
+      }
+
+      faults.add(fault);
+      probabilities.add(probability);
+      return this;
+    }
+
+    public ApnsSimulator build() {
+      Objects.requireNonNull(latency, "Latency must not be null");
+
+      if (maxConcurrentStreams < 1) {
+        throw new IllegalArgumentException("Max concurrent streams must be at least 1");
+      }
+
+      return new ApnsSimulator(this);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package digital.soares.apns.messaging.netty;
+
+import digital.soares.apns.messaging.Alert;
+import digital.soares.apns.messaging.ApnsKeyPair;
+import digital.soares.apns.messaging.ApnsMessage;
+import digital.soares.apns.messaging.ApnsMessaging;
+import digital.soares.apns.messaging.ApnsResponse;
+import digital.soares.apns.messaging.ApnsSimulator;
+import digital.soares.apns.messaging.Aps;
+import digital.soares.apns.messaging.BulkResult;
+import digital.soares.apns.messaging.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compares the transports end to end against the same
+ * {@link ApnsSimulator}, a single connection each. {@code sendAsync}
+ * measures the round trip of one notification, {@code sendAll} the
+ * throughput of a batch with many streams in flight; its score is per
+ * notification.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+  private static final int BATCH_SIZE = 10_000;
+
+  @Param({"jdk", "netty"})
+  private String transport;
+
+  private ApnsSimulator simulator;
+  private NettyTransport nettyTransport;
+  private ApnsMessaging apnsMessaging;
+  private List<ApnsMessage> messages;
+  private ApnsMessage message;
+
+  @Setup
+  public void setUp() {
+    var keyPair = ApnsKeyPair.generate("A1B2C3D4F5", "A1B2C3D4F5");
+
+    simulator = ApnsSimulator.builder()
+      .addProviderKey(keyPair)
+      .build();
+    nettyTransport = NettyTransport.builder().build();
+    apnsMessaging = ApnsMessaging.builder()
+      .setApnsKey(keyPair.getApnsKey())
+      .setEnvironment(simulator.environment())
+      .setSslContext(ApnsSimulator.clientSslContext())
+      .setTransport("netty".equals(transport) ? nettyTransport : Transport.jdk())
+      .setMaxInFlight(1000)
+      .build();
+
+    messages = new ArrayList<>(BATCH_SIZE);
+    for (var i = 0; i < BATCH_SIZE; i++) {
+      messages.add(message(i));
+    }
+
+    message = messages.get(0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    apnsMessaging.close();
+    nettyTransport.close();
+    simulator.close();
+  }
+
+  @Benchmark
+  public ApnsResponse sendAsync() throws IOException {
+    return apnsMessaging.sendAsync(message).join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public BulkResult sendAll() {
+    return apnsMessaging.sendAll(messages).join();
+  }
+
+  private static ApnsMessage message(long seed) {
+    return ApnsMessage.builder()
+      .setToken((new UUID(seed, ~seed).toString() + new UUID(~seed, seed)).replace("-", ""))
+      .setId(UUID.randomUUID())
+      .setTopic("es.usoar.app")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("New message")
+          .setBody("Hey, are we still on for lunch tomorrow?")
+          .build())
+        .setBadge(3)
+        .build())
+      .putData("chatId", "42")
+      .build();
+  }
+}
@@ -0,0 +1,350 @@
+package digital.soares.apns.messaging.netty;
+
+import digital.soares.apns.messaging.ApnsRequest;
+import digital.soares.apns.messaging.ApnsResponse;
+import digital.soares.apns.messaging.StreamResetException;
+import digital.soares.apns.messaging.Transport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single HTTP/2 connection of a {@link NettyTransport}, opened on the
+ * first request. Each request takes a child stream channel; its headers
+ * and payload are written as two frames, the payload copied once into a
+ * pooled direct buffer, and flushed together.
+ *
+ * <p>Streams above the limit advertised by the server are buffered until
+ * others close. A stream reset alone fails with a
+ * {@link StreamResetException}, keeping the connection. A failed
+ * connection is never reopened here: its requests fail with an
+ * {@link IOException}, and the pool of
+ * {@link digital.soares.apns.messaging.ApnsMessaging} replaces the channel.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+class NettyChannel implements Transport.Channel {
+
+  private final NettyTransport transport;
+  private final SslContext sslContext;
+  private final Promise<Channel> ready = ImmediateEventExecutor.INSTANCE.newPromise();
+  private ChannelFuture connectFuture;
+  private volatile Throwable failure;
+  private volatile boolean goAwayReceived;
+  private boolean closed;
+
+  NettyChannel(NettyTransport transport, SslContext sslContext) {
+    this.transport = transport;
+    this.sslContext = sslContext;
+  }
+
+  @Override
+  public CompletableFuture<ApnsResponse> send(ApnsRequest request) {
+    var result = new CompletableFuture<ApnsResponse>();
+    Future<Channel> connected;
+
+    try {
+      connected = connect(request.getUri());
+    } catch (IOException e) {
+      result.completeExceptionally(e);
+      return result;
+    }
+
+    connected.addListener((Future<Channel> future) -> {
+      if (!future.isSuccess()) {
+        result.completeExceptionally(toIOException(future.cause()));
+        return;
+      }
+
+      // new streams would be refused, fail them so the pool replaces the channel
+      if (goAwayReceived) {
+        result.completeExceptionally(new IOException("Connection is going away"));
+        return;
+      }
+
+      new Http2StreamChannelBootstrap(future.getNow())
+        .handler(new ResponseHandler(result))
+        .open()
+        .addListener((Future<Http2StreamChannel> opened) -> {
+          if (opened.isSuccess()) {
+            write(opened.getNow(), request, result);
+          } else {
+            result.completeExceptionally(toIOException(opened.cause()));
+          }
+        });
+    });
+
+    return result;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+
+    if (connectFuture != null) {
+      connectFuture.channel().close();
+    }
+  }
+
+  /**
+   * Opens the connection on the first call, and hands back the same one
+   * afterwards, even once closed, so its requests fail. The connection is
+   * ready once the server sent its settings, so no stream goes out before
+   * the connection preface nor ignores the stream limit of the server.
+   */
+  private synchronized Future<Channel> connect(URI uri) throws IOException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+
+    if (connectFuture == null) {
+      var host = uri.getHost();
+      var port = uri.getPort() == -1 ? 443 : uri.getPort();
+
+      connectFuture = new Bootstrap()
+        .group(transport.getEventLoopGroup())
+        .channel(NioSocketChannel.class)
+        .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .option(ChannelOption.SO_KEEPALIVE, true)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, transport.getConnectTimeoutMillis())
+        .handler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            var sslHandler = sslContext.newHandler(channel.alloc(), host, port);
+            var parameters = sslHandler.engine().getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslHandler.engine().setSSLParameters(parameters);
+
+            channel.pipeline().addLast(
+              sslHandler,
+              new FlushConsolidationHandler(transport.getFlushBatchSize(), true),
+              Http2FrameCodecBuilder.forClient()
+                .initialSettings(Http2Settings.defaultSettings()
+                  .initialWindowSize(transport.getInitialWindowSize()))
+                // streams above the limit of the server wait for others to close
+                .encoderEnforceMaxConcurrentStreams(true)
+                .build(),
+              new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()),
+              new ConnectionHandler());
+          }
+        })
+        .connect(host, port);
+
+      var channel = connectFuture.channel();
+      var timeout = channel.eventLoop().schedule(() -> {
+        if (ready.tryFailure(new ConnectTimeoutException("HTTP/2 connection timed out"))) {
+          channel.close();
+        }
+      }, transport.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+
+      ready.addListener(future -> timeout.cancel(false));
+      connectFuture.addListener((ChannelFutureListener) future -> {
+        if (!future.isSuccess()) {
+          ready.tryFailure(future.cause());
+        }
+      });
+    }
+
+    return ready;
+  }
+
+  private void write(Http2StreamChannel stream, ApnsRequest request, CompletableFuture<ApnsResponse> result) {
+    var uri = request.getUri();
+    var body = request.getBody();
+    var headers = new DefaultHttp2Headers()
+      .method(request.getMethod())
+      .scheme(uri.getScheme())
+      .authority(uri.getRawAuthority())
+      .path(uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + '?' + uri.getRawQuery());
+
+    for (var header : request.getHeaders().entrySet()) {
+      headers.add(header.getKey(), header.getValue());
+    }
+
+    var timeout = stream.eventLoop().schedule(() -> {
+      if (result.completeExceptionally(new HttpTimeoutException("request timed out"))) {
+        stream.close();
+      }
+    }, request.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+
+    result.whenComplete((response, failure) -> timeout.cancel(false));
+
+    // like a stream refused after a GOAWAY, the stream isn't always closed by a failed write
+    ChannelFutureListener written = future -> {
+      if (!future.isSuccess() && result.completeExceptionally(toIOException(future.cause()))) {
+        stream.close();
+      }
+    };
+
+    stream.write(new DefaultHttp2HeadersFrame(headers, body == null)).addListener(written);
+
+    if (body != null) {
+      var content = stream.alloc().directBuffer(body.length).writeBytes(body);
+      stream.write(new DefaultHttp2DataFrame(content, true)).addListener(written);
+    }
+
+    stream.flush();
+  }
+
+  private IOException toIOException(Throwable cause) {
+    var connectionFailure = failure;
+
+    if (cause instanceof ClosedChannelException && connectionFailure != null) {
+      cause = connectionFailure;
+    }
+
+    // after a GOAWAY, streams are refused because the connection is draining
+    if (cause instanceof Http2Exception.StreamException && !goAwayReceived) {
+      return new StreamResetException(cause.getMessage(), cause);
+    }
+
+    return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+  }
+
+  /**
+   * Tells when the connection is ready and when it is going away, and
+   * keeps the failure closing it, like a failed TLS handshake, so the
+   * requests failing because of it tell why.
+   */
+  private class ConnectionHandler extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void channelRead(ChannelHandlerContext context, Object message) {
+      if (message instanceof Http2SettingsFrame) {
+        ready.trySuccess(context.channel());
+      } else if (message instanceof Http2GoAwayFrame) {
+        goAwayReceived = true;
+      }
+
+      ReferenceCountUtil.release(message);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext context) {
+      var connectionFailure = failure;
+      ready.tryFailure(connectionFailure == null ? new ClosedChannelException() : connectionFailure);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+      failure = cause;
+      context.close();
+    }
+  }
+
+  /**
+   * Reads the response of a single stream.
+   */
+  private class ResponseHandler extends SimpleChannelInboundHandler<Http2StreamFrame> {
+
+    private final CompletableFuture<ApnsResponse> result;
+    private int statusCode;
+    private String apnsId;
+    private byte[] body;
+
+    private ResponseHandler(CompletableFuture<ApnsResponse> result) {
+      this.result = result;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext context, Http2StreamFrame frame) {
+      if (frame instanceof Http2HeadersFrame) {
+        var headersFrame = (Http2HeadersFrame) frame;
+        var status = headersFrame.headers().status();
+
+        if (status != null) {
+          var id = headersFrame.headers().get("apns-id");
+          statusCode = Integer.parseInt(status.toString());
+          apnsId = id == null ? null : id.toString();
+        }
+
+        if (headersFrame.isEndStream()) {
+          complete(context);
+        }
+      } else if (frame instanceof Http2DataFrame) {
+        var dataFrame = (Http2DataFrame) frame;
+        var content = dataFrame.content();
+        var offset = body == null ? 0 : body.length;
+        var appended = new byte[offset + content.readableBytes()];
+
+        if (body != null) {
+          System.arraycopy(body, 0, appended, 0, offset);
+        }
+
+        content.readBytes(appended, offset, content.readableBytes());
+        body = appended;
+
+        if (dataFrame.isEndStream()) {
+          complete(context);
+        }
+      }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext context, Object event) {
+      if (event instanceof Http2ResetFrame && !goAwayReceived) {
+        var errorCode = ((Http2ResetFrame) event).errorCode();
+        result.completeExceptionally(new StreamResetException("Stream reset with error " + errorCode));
+      }
+
+      context.fireUserEventTriggered(event);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext context) {
+      if (!result.isDone()) {
+        result.completeExceptionally(toIOException(new ClosedChannelException()));
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+      result.completeExceptionally(toIOException(cause));
+      context.close();
+    }
+
+    private void complete(ChannelHandlerContext context) {
+      result.complete(ApnsResponse.of(statusCode, apnsId, body));
+      context.close();
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package digital.soares.apns.messaging.netty;
+
+import digital.soares.apns.messaging.Transport;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Transport} built on Netty's HTTP/2 codec. Compared to the JDK
+ * transport it gives control over the flow-control window, batches the
+ * frames of many streams into fewer writes, encodes payloads into pooled
+ * direct buffers and uses OpenSSL when {@code netty-tcnative} is on the
+ * classpath.
+ *
+ * <p>Responses are completed on the event loop. Set an executor on
+ * {@link digital.soares.apns.messaging.ApnsMessaging.Builder#setExecutor(Executor)}
+ * to keep the callbacks of the futures off it.
+ *
+ * <p>The transport owns its event loop, unless one is given, and must be
+ * closed once the {@link digital.soares.apns.messaging.ApnsMessaging}
+ * instances using it are closed.
+ *
+ * @author <a href="https://usoar.es">Uanderson Soares</a>
+ */
+public class NettyTransport implements Transport, AutoCloseable {
+
+  private static final ApplicationProtocolConfig ALPN = new ApplicationProtocolConfig(
+    ApplicationProtocolConfig.Protocol.ALPN,
+    ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+    ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+    ApplicationProtocolNames.HTTP_2);
+
+  private final EventLoopGroup eventLoopGroup;
+  private final boolean ownsEventLoopGroup;
+  private final int initialWindowSize;
+  private final int flushBatchSize;
+  private final int connectTimeoutMillis;
+  private final boolean nativeTls;
+
+  private NettyTransport(Builder builder) {
+    this.ownsEventLoopGroup = builder.eventLoopGroup == null;
+    this.eventLoopGroup = ownsEventLoopGroup
+      ? new NioEventLoopGroup(builder.eventLoopThreads, new DefaultThreadFactory("apns-netty", true))
+      : builder.eventLoopGroup;
+    this.initialWindowSize = builder.initialWindowSize;
+    this.flushBatchSize = builder.flushBatchSize;
+    this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, builder.connectTimeout.toMillis());
+    this.nativeTls = builder.nativeTls;
+  }
+
+  /**
+   * Opens a channel. The executor is not used, every task of the channel
+   * runs on the event loop.
+   *
+   * @param sslContext to secure the connection, or null for the default one
+   * @param executor   ignored
+   * @return a new {@link Transport.Channel}
+   * @throws IllegalStateException in case the TLS context can't be created
+   */
+  @Override
+  public Channel open(SSLContext sslContext, Executor executor) {
+    try {
+      return new NettyChannel(this, sslContext(sslContext));
+    } catch (SSLException e) {
+      throw new IllegalStateException("TLS context can't be created", e);
+    }
+  }
+
+  /**
+   * Shuts the event loop down, unless it was given.
+   */
+  @Override
+  public void close() {
+    if (ownsEventLoopGroup) {
+      eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+  }
+
+  EventLoopGroup getEventLoopGroup() {
+    return eventLoopGroup;
+  }
+
+  int getInitialWindowSize() {
+    return initialWindowSize;
+  }
+
+  int getFlushBatchSize() {
+    return flushBatchSize;
+  }
+
+  int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  /**
+   * Wraps the given JDK context, so the trust and key material of the
+   * caller is kept, or builds a client context on OpenSSL when it's
+   * available and allowed.
+   */
+  private SslContext sslContext(SSLContext sslContext) throws SSLException {
+    if (sslContext != null) {
+      return new JdkSslContext(sslContext, true, Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE,
+        ALPN, ClientAuth.NONE, null, false);
+    }
+
+    return SslContextBuilder.forClient()
+      .sslProvider(nativeTls && SslProvider.isAlpnSupported(SslProvider.OPENSSL) ? SslProvider.OPENSSL : SslProvider.JDK)
+      .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+      .applicationProtocolConfig(ALPN)
+      .build();
+  }
+
+  /**
+   * Creates a new {@link NettyTransport.Builder}.
+   *
+   * @return A {@link NettyTransport.Builder} instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private EventLoopGroup eventLoopGroup;
+    private int eventLoopThreads = 1;
+    private int initialWindowSize = 1 << 20;
+    private int flushBatchSize = 256;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private boolean nativeTls = true;
+
+    /**
+     * Sets the event loop the connections run on. It's shared by all the
+     * channels and never shut down by the transport. By default the
+     * transport has its own.
+     *
+     * @param eventLoopGroup the event loop
+     * @return this builder
+     */
+    public Builder setEventLoopGroup(EventLoopGroup eventLoopGroup) {
+      this.eventLoopGroup = eventLoopGroup;
+      return this;
+    }
+
+    /**
+     * Sets how many threads the own event loop of the transport has.
+     * A single thread handles many thousands of streams. Defaults to 1.
+     *
+     * @param eventLoopThreads the number of threads
+     * @return this builder
+     */
+    public Builder setEventLoopThreads(int eventLoopThreads) {
+      this.eventLoopThreads = eventLoopThreads;
+      return this;
+    }
+
+    /**
+     * Sets the HTTP/2 flow-control window each stream advertises for its
+     * response. Defaults to 1 MiB.
+     *
+     * @param initialWindowSize the window size in bytes
+     * @return this builder
+     */
+    public Builder setInitialWindowSize(int initialWindowSize) {
+      this.initialWindowSize = initialWindowSize;
+      return this;
+    }
+
+    /**
+     * Sets how many flushes are coalesced into a single write to the
+     * socket while a connection is busy, so the frames of many streams
+     * share a TLS record and a syscall. Defaults to 256.
+     *
+     * @param flushBatchSize the number of flushes
+     * @return this builder
+     */
+    public Builder setFlushBatchSize(int flushBatchSize) {
+      this.flushBatchSize = flushBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets how long to wait for a connection to open. Defaults to 10 seconds.
+     *
+     * @param connectTimeout the connect timeout
+     * @return this builder
+     */
+    public Builder setConnectTimeout(Duration connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /**
+     * Sets whether OpenSSL is used when {@code netty-tcnative} is on the
+     * classpath. Ignored when {@link digital.soares.apns.messaging.ApnsMessaging}
+     * is given an {@link SSLContext}. Defaults to true.
+     *
+     * @param nativeTls whether to use OpenSSL
+     * @return this builder
+     */
+    public Builder setNativeTls(boolean nativeTls) {
+      this.nativeTls = nativeTls;
+      return this;
+    }
+
+    /**
+     * Creates a new {@link NettyTransport} instance.
+     *
+     * @return A new {@link NettyTransport} instance.
+     * @throws NullPointerException     If the connect timeout is null.
+     * @throws IllegalArgumentException If any of the sizes or the connect timeout is not positive.
+     */
+    public NettyTransport build() {
+      Objects.requireNonNull(connectTimeout, "Connect timeout must not be null");
+
+      if (eventLoopThreads < 1 || initialWindowSize < 1 || flushBatchSize < 1) {
+        throw new IllegalArgumentException("Event loop threads, window size and flush batch size must be positive");
+      }
+
+      if (connectTimeout.isNegative() || connectTimeout.isZero()) {
+        throw new IllegalArgumentException("Connect timeout must be positive");
+      }
+
+      return new NettyTransport(this);
+    }
+  }
+}
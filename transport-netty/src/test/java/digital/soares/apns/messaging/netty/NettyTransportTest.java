@@ -0,0 +1,190 @@
+package digital.soares.apns.messaging.netty;
+
+import digital.soares.apns.messaging.Alert;
+import digital.soares.apns.messaging.ApnsKeyPair;
+import digital.soares.apns.messaging.ApnsMessage;
+import digital.soares.apns.messaging.ApnsMessaging;
+import digital.soares.apns.messaging.ApnsResponse;
+import digital.soares.apns.messaging.ApnsSimulator;
+import digital.soares.apns.messaging.Aps;
+import digital.soares.apns.messaging.RetryPolicy;
+import digital.soares.apns.messaging.StreamResetException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NettyTransportTest {
+
+  static final ApnsKeyPair KEY_PAIR = ApnsKeyPair.generate("A1B2C3D4F5", "A1B2C3D4F5");
+
+  static NettyTransport transport;
+
+  @BeforeAll
+  static void setUp() {
+    transport = NettyTransport.builder().build();
+  }
+
+  @AfterAll
+  static void tearDown() {
+    transport.close();
+  }
+
+  @Test
+  @DisplayName("Should multiplex notifications over a single HTTP/2 connection")
+  void multiplexNotifications() {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofMillis(20)))
+      .build();
+         var apnsMessaging = create(simulator)) {
+
+      var messages = new ArrayList<ApnsMessage>();
+      for (var i = 0; i < 500; i++) {
+        messages.add(message(String.format("%064x", i)));
+      }
+
+      var result = apnsMessaging.sendAll(messages).join();
+
+      assertEquals(500, result.getSucceeded());
+      assertEquals(1, simulator.getConnectionCount());
+      assertTrue(simulator.getPeakConcurrentStreams() > 1);
+    }
+  }
+
+  @Test
+  @DisplayName("Should wait for streams above the limit of the server, keeping the connection")
+  void bufferStreamsAboveServerLimit() {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setMaxConcurrentStreams(5)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofMillis(20)))
+      .build();
+         var apnsMessaging = create(simulator)) {
+
+      var messages = new ArrayList<ApnsMessage>();
+      for (var i = 0; i < 100; i++) {
+        messages.add(message(String.format("%064x", i)));
+      }
+
+      var result = apnsMessaging.sendAll(messages).join();
+
+      assertEquals(100, result.getSucceeded());
+      assertEquals(1, simulator.getConnectionCount());
+      assertTrue(simulator.getPeakConcurrentStreams() <= 5);
+    }
+  }
+
+  @Test
+  @DisplayName("Should read the status, id and reason of a response")
+  void readResponse() throws IOException, InterruptedException {
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.unregistered())
+      .build();
+         var apnsMessaging = create(simulator)) {
+
+      var response = apnsMessaging.send(message(token));
+
+      assertEquals(410, response.getStatusCode());
+      assertEquals(ApnsResponse.Reason.UNREGISTERED, response.getReason());
+      assertNotNull(response.getApnsId());
+      assertNotNull(response.getTimestamp());
+      assertTrue(apnsMessaging.send(message("d4e5f6")).isSuccessful());
+    }
+  }
+
+  @Test
+  @DisplayName("Should fail streams left open by a GOAWAY and reconnect")
+  void reconnectAfterGoAway() throws IOException, InterruptedException {
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.goAway())
+      .build();
+         var apnsMessaging = create(simulator)) {
+
+      assertThrows(IOException.class, () -> apnsMessaging.send(message(token)));
+      assertEquals(200, apnsMessaging.send(message("d4e5f6")).getStatusCode());
+      assertEquals(2, simulator.getConnectionCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should replace a connection draining after a GOAWAY")
+  void replaceDrainingConnection() throws IOException, InterruptedException {
+    var token = "cc566d1c79f4470f96015b0e3b402abb";
+
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .injectFault(token, ApnsSimulator.Fault.drain())
+      .build();
+         var apnsMessaging = create(simulator)) {
+
+      assertEquals(200, apnsMessaging.send(message(token)).getStatusCode());
+
+      var failure = assertThrows(IOException.class, () -> apnsMessaging.send(message("d4e5f6")));
+      assertFalse(failure instanceof StreamResetException);
+
+      assertEquals(200, apnsMessaging.send(message("d4e5f6")).getStatusCode());
+      assertEquals(2, simulator.getConnectionCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Should time out a notification without waiting for its response")
+  void timeOutPerMessage() throws IOException {
+    try (var simulator = ApnsSimulator.builder()
+      .addProviderKey(KEY_PAIR)
+      .setLatency(ApnsSimulator.Latency.fixed(Duration.ofSeconds(2)))
+      .build();
+         var apnsMessaging = create(simulator)) {
+
+      apnsMessaging.warmUp().join();
+
+      var start = System.nanoTime();
+      assertThrows(HttpTimeoutException.class, () -> apnsMessaging.send(ApnsMessage.builder()
+        .setToken("d4e5f6")
+        .setTimeout(Duration.ofMillis(100))
+        .build()));
+
+      assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+    }
+  }
+
+  static ApnsMessaging create(ApnsSimulator simulator) {
+    return ApnsMessaging.builder()
+      .setApnsKey(KEY_PAIR.getApnsKey())
+      .setEnvironment(simulator.environment())
+      .setSslContext(ApnsSimulator.clientSslContext())
+      .setRetryPolicy(RetryPolicy.none())
+      .setTransport(transport)
+      .build();
+  }
+
+  static ApnsMessage message(String token) {
+    return ApnsMessage.builder()
+      .setToken(token)
+      .setTopic("topic")
+      .setAps(Aps.builder()
+        .setAlert(Alert.builder()
+          .setTitle("Title")
+          .build())
+        .build())
+      .build();
+  }
+}